@@ -0,0 +1,213 @@
+package com.minaret;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary encoding for the {@value #SUBPROTOCOL} WebSocket subprotocol.
+ *
+ * Each binary WebSocket message carries one tagged value — a map with the same keys
+ * as the JSON API, e.g. {@code {"cast":"Steve","slot":3,"action":"key.use"}}:
+ *
+ *   NULL   0
+ *   FALSE  1
+ *   TRUE   2
+ *   INT    3  zigzag varint (64-bit)
+ *   DOUBLE 4  8 bytes, big-endian IEEE 754
+ *   STRING 5  varint byte length, UTF-8
+ *   LIST   6  varint count, values
+ *   MAP    7  varint count, then (varint key length, UTF-8 key, value) pairs
+ *
+ * Requests decode to the same value tree SimpleJson.parseValue produces, and
+ * responses / events encode from the same maps SimpleJson generates from, so a
+ * binary client never costs a JSON parse or escape. Pure static functions, no state.
+ */
+final class BinaryProtocol {
+
+    static final String SUBPROTOCOL = "minaret.bin.v1";
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_STRING = 5;
+    private static final int TAG_LIST = 6;
+    private static final int TAG_MAP = 7;
+    /** Nesting limit for decoded values, so a hostile message cannot exhaust the stack. */
+    private static final int MAX_DEPTH = 16;
+
+    private BinaryProtocol() {}
+
+    // ── Negotiation ─────────────────────────────────────────────────────
+
+    /** True if a Sec-WebSocket-Protocol request header offers {@link #SUBPROTOCOL}. */
+    static boolean offered(String header) {
+        if (header == null) return false;
+        for (String protocol : header.split(",")) {
+            if (SUBPROTOCOL.equals(protocol.trim())) return true;
+        }
+        return false;
+    }
+
+    // ── Decoding ────────────────────────────────────────────────────────
+
+    /** Decode a complete message into a Map/List/String/Long/Double/Boolean/null tree. */
+    static Object decode(byte[] buf, int off, int len) {
+        return new Reader(buf, off, len).readMessage();
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+
+        Reader(byte[] buf, int off, int len) {
+            this.buf = buf;
+            this.pos = off;
+            this.end = off + len;
+        }
+
+        Object readMessage() {
+            Object value = readValue(0);
+            if (pos != end) throw new IllegalArgumentException("Trailing bytes after value");
+            return value;
+        }
+
+        private Object readValue(int depth) {
+            if (depth > MAX_DEPTH) throw new IllegalArgumentException("Nesting too deep");
+            int tag = readByte();
+            return switch (tag) {
+                case TAG_NULL -> null;
+                case TAG_FALSE -> Boolean.FALSE;
+                case TAG_TRUE -> Boolean.TRUE;
+                case TAG_INT -> {
+                    long v = readVarLong();
+                    yield (v >>> 1) ^ -(v & 1);
+                }
+                case TAG_DOUBLE -> {
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) bits = (bits << 8) | readByte();
+                    yield Double.longBitsToDouble(bits);
+                }
+                case TAG_STRING -> readString();
+                case TAG_LIST -> {
+                    int count = readCount();
+                    List<Object> list = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) list.add(readValue(depth + 1));
+                    yield list;
+                }
+                case TAG_MAP -> {
+                    int count = readCount();
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < count; i++) map.put(readString(), readValue(depth + 1));
+                    yield map;
+                }
+                default -> throw new IllegalArgumentException("Unknown tag: " + tag);
+            };
+        }
+
+        private String readString() {
+            int n = readCount();
+            String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return s;
+        }
+
+        /** A length or element count; never more than the bytes left, so junk cannot force a big allocation. */
+        private int readCount() {
+            long n = readVarLong();
+            // A 10-byte varint can decode negative; that is as malformed as one too large
+            if (n < 0 || n > end - pos) throw new IllegalArgumentException("Length exceeds message");
+            return (int) n;
+        }
+
+        private long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("Varint too long");
+        }
+
+        private int readByte() {
+            if (pos >= end) throw new IllegalArgumentException("Truncated message");
+            return buf[pos++] & 0xFF;
+        }
+    }
+
+    // ── Encoding ────────────────────────────────────────────────────────
+
+    /** Encode a Map/List/String/Number/Boolean/null tree, as SimpleJson.generate accepts. */
+    static byte[] encode(Object value) {
+        Writer w = new Writer();
+        w.writeValue(value);
+        return Arrays.copyOf(w.buf, w.len);
+    }
+
+    private static final class Writer {
+        byte[] buf = new byte[128];
+        int len = 0;
+
+        @SuppressWarnings("unchecked")
+        void writeValue(Object value) {
+            if (value == null) {
+                writeByte(TAG_NULL);
+            } else if (value instanceof Boolean b) {
+                writeByte(b ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+                long v = ((Number) value).longValue();
+                writeByte(TAG_INT);
+                writeVarLong((v << 1) ^ (v >> 63));
+            } else if (value instanceof Number n) {
+                writeByte(TAG_DOUBLE);
+                long bits = Double.doubleToLongBits(n.doubleValue());
+                ensure(8);
+                for (int i = 7; i >= 0; i--) buf[len++] = (byte) (bits >>> (i * 8));
+            } else if (value instanceof Map<?, ?> map) {
+                writeByte(TAG_MAP);
+                writeVarLong(map.size());
+                for (var entry : ((Map<String, Object>) map).entrySet()) {
+                    writeString(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof List<?> list) {
+                writeByte(TAG_LIST);
+                writeVarLong(list.size());
+                for (Object item : list) writeValue(item);
+            } else {
+                writeByte(TAG_STRING);
+                writeString(value.toString());
+            }
+        }
+
+        private void writeString(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buf, len, utf8.length);
+            len += utf8.length;
+        }
+
+        private void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[len++] = (byte) b;
+        }
+
+        private void ensure(int more) {
+            if (len + more > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + more));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.minaret;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the dispatcher knows about the client behind a request: its fair share of
+ * the {@link TickScheduler}, its rate limits, its event subscriptions, its queued
+ * requests by id and its request counters. One per WebSocket connection; console and chord requests
+ * share an unlimited one.
+ */
+final class ClientSession {
+
+    final TickScheduler.Client tasks;
+    /** This connection's buckets, or null if unlimited. */
+    private final RateLimiter limiter;
+    /** Buckets shared by every connection of the same authenticated user, or null. */
+    private final RateLimiter userLimiter;
+    /** The connection's event subscriptions, or null for the console. */
+    final Subscriptions.Member events;
+    /**
+     * Runs {@link RequestHandler.Affinity#CONNECTION} and {@link RequestHandler.Affinity#SNAPSHOT}
+     * handlers: in place where the connection has a thread of its own, on a virtual
+     * thread where it shares a selector thread with others.
+     */
+    final Executor handlers;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    /** Queued server-thread requests by id, until they start or are cancelled. */
+    private final Map<Object, Pending> queued = new ConcurrentHashMap<>();
+
+    /** A queued request that either starts or is cancelled, never both. */
+    static final class Pending {
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final Runnable onCancel;
+
+        private Pending(Runnable onCancel) {
+            this.onCancel = onCancel;
+        }
+    }
+
+    ClientSession(
+        TickScheduler.Client tasks,
+        RateLimiter limiter,
+        RateLimiter userLimiter,
+        Subscriptions.Member events,
+        Executor handlers
+    ) {
+        this.tasks = tasks;
+        this.limiter = limiter;
+        this.userLimiter = userLimiter;
+        this.events = events;
+        this.handlers = handlers;
+    }
+
+    /** Count a request of {@code type}: 0 if it may run, else nanoseconds until it could. */
+    long admit(String type) {
+        requests.increment();
+        long wait = limiter != null ? limiter.acquire(type) : 0;
+        if (wait == 0 && userLimiter != null) wait = userLimiter.acquire(type);
+        if (wait > 0) rateLimited.increment();
+        return wait;
+    }
+
+    /** Make the queued request {@code id} cancellable; {@code onCancel} answers it if it is. */
+    Pending track(Object id, Runnable onCancel) {
+        Pending pending = new Pending(onCancel);
+        queued.put(id, pending);
+        return pending;
+    }
+
+    /** Claim a tracked request for running: false if it was cancelled first. */
+    boolean start(Object id, Pending pending) {
+        queued.remove(id, pending);
+        return pending.claimed.compareAndSet(false, true);
+    }
+
+    /** Cancel the queued request {@code id}: false if there is none or it already started. */
+    boolean cancel(Object id) {
+        Pending pending = queued.remove(id);
+        if (pending == null || !pending.claimed.compareAndSet(false, true)) return false;
+        pending.onCancel.run();
+        return true;
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    long rateLimited() {
+        return rateLimited.sum();
+    }
+}
@@ -0,0 +1,91 @@
+package com.minaret;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.ParseResults;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * LRU cache of Brigadier parses for WebSocket commands, keyed by command string.
+ *
+ * Every WebSocket command runs with console permissions, so a parse is valid for
+ * as long as the command tree it was made against. The cache remembers which
+ * dispatcher that is and starts over when the server hands out a different one —
+ * which is what happens when {@code /reload} or a new server rebuilds the tree.
+ * Only clean, complete parses are kept, so errors are always reported fresh.
+ *
+ * Only the parse is shared: {@link #parse} hands back a copy bound to the caller's
+ * source, made on the server thread, so level and position are never stale.
+ * {@link #prefetch} warms the cache off the server thread without creating a source
+ * there, parsing against the last one {@link #parse} was given.
+ */
+final class CommandParseCache {
+
+    private final int capacity;
+    private final Map<String, ParseResults<CommandSourceStack>> entries;
+    private CommandDispatcher<CommandSourceStack> dispatcher;
+    /** Last source seen on the server thread, for {@link #prefetch}. */
+    private volatile CommandSourceStack lastSource;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    CommandParseCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ParseResults<CommandSourceStack>> eldest) {
+                return size() > CommandParseCache.this.capacity;
+            }
+        };
+    }
+
+    /** The parse of {@code command} against the current command tree, bound to {@code source}. */
+    ParseResults<CommandSourceStack> parse(MinecraftServer server, String command, CommandSourceStack source) {
+        lastSource = source;
+        ParseResults<CommandSourceStack> parsed = lookup(server, command, source);
+        if (parsed.getContext().getSource() == source) return parsed;
+        // A cached parse carries the source it was made with; execute with this one
+        return new ParseResults<>(parsed.getContext().copy().withSource(source), parsed.getReader(), parsed.getExceptions());
+    }
+
+    /** Parse {@code command} into the cache ahead of {@link #parse}; safe off the server thread. */
+    void prefetch(MinecraftServer server, String command) {
+        CommandSourceStack source = lastSource;
+        if (source != null && capacity > 0) lookup(server, command, source);
+    }
+
+    private ParseResults<CommandSourceStack> lookup(MinecraftServer server, String command, CommandSourceStack source) {
+        CommandDispatcher<CommandSourceStack> current = server.getCommands().getDispatcher();
+        synchronized (entries) {
+            if (current != dispatcher) {
+                entries.clear();
+                dispatcher = current;
+            }
+            ParseResults<CommandSourceStack> cached = entries.get(command);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        ParseResults<CommandSourceStack> parsed = current.parse(command, source);
+        if (capacity > 0 && parsed.getExceptions().isEmpty() && !parsed.getReader().canRead()) {
+            synchronized (entries) {
+                if (current == dispatcher) entries.put(command, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+}
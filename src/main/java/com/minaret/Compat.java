@@ -4,11 +4,13 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.level.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Cross-version compatibility: permissions, environment detection, inventory slot access.
+ * Cross-version compatibility: permissions, environment detection, inventory slot access,
+ * dimension ids.
  * KeyMapping compat is in {@link KeyMappingCompat}.
  */
 public final class Compat {
@@ -85,6 +87,32 @@ public final class Compat {
         }
     }
 
+    // ── Dimension id (ResourceKey.location() on 1.21.1, identifier() on 1.21.11) ──
+
+    private static final Method RESOURCE_KEY_ID = resolveResourceKeyId();
+
+    private static Method resolveResourceKeyId() {
+        try {
+            Class<?> key = Class.forName("net.minecraft.resources.ResourceKey");
+            Method m = findMethod(key, "location");
+            return m != null ? m : findMethod(key, "identifier");
+        } catch (ClassNotFoundException e) {
+            LOGGER.error("Cannot find ResourceKey", e);
+            return null;
+        }
+    }
+
+    /** A level's dimension as {@code namespace:path}, e.g. {@code minecraft:overworld}. */
+    public static String dimensionId(Level level) {
+        Object key = level.dimension();
+        if (RESOURCE_KEY_ID != null) {
+            try {
+                return String.valueOf(RESOURCE_KEY_ID.invoke(key));
+            } catch (Exception ignored) {}
+        }
+        return String.valueOf(key);
+    }
+
     // ── Environment ─────────────────────────────────────────────────────
 
     private static final boolean IS_CLIENT = resolveIsClient();
@@ -0,0 +1,139 @@
+package com.minaret;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Windowed aggregation of high-volume event streams — count, sum, min and max per
+ * stream, player and optional key (e.g. mob type).
+ *
+ * A window opens at a stream's first sample for that player and key, and is
+ * emitted as one event when its sum reaches the stream's threshold or when it has
+ * been open for the stream's window of ticks, whichever is first. The clock is the
+ * server tick, advanced by {@link #tick}, so windows close on time even when no
+ * further samples arrive. Single-threaded: the event thread owns it.
+ */
+final class EventAggregator {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Flush after {@code ticks}, or once the sum reaches {@code threshold} (0: time only). */
+    record Window(long ticks, double threshold) {}
+
+    /** Parsed {@code aggregate_streams}: stream topic to its window. */
+    record Streams(Map<String, Window> byTopic) {
+        static final Streams NONE = new Streams(Map.of());
+
+        /** Parse {@code "topic=windowTicks[/threshold]"} entries; malformed ones are logged and skipped. */
+        static Streams parse(List<? extends String> entries) {
+            Map<String, Window> byTopic = new HashMap<>();
+            for (String entry : entries) {
+                try {
+                    int eq = entry.indexOf('=');
+                    String topic = entry.substring(0, eq).trim();
+                    String[] window = entry.substring(eq + 1).split("/");
+                    long ticks = Long.parseLong(window[0].trim());
+                    double threshold = window.length > 1 ? Double.parseDouble(window[1].trim()) : 0;
+                    if (topic.isEmpty() || ticks < 1 || threshold < 0) throw new IllegalArgumentException();
+                    byTopic.put(topic, new Window(ticks, threshold));
+                } catch (RuntimeException e) {
+                    LOGGER.warn(
+                        "Ignoring malformed aggregate_streams entry '{}' (expected topic=windowTicks/threshold)",
+                        entry
+                    );
+                }
+            }
+            return new Streams(Map.copyOf(byTopic));
+        }
+
+        boolean enabled(String topic) {
+            return byTopic.containsKey(topic);
+        }
+    }
+
+    private record Key(String topic, UUID player, String key) {}
+
+    private static final class Accum {
+        final String player;
+        final long opened;
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        Accum(String player, long opened) {
+            this.player = player;
+            this.opened = opened;
+        }
+    }
+
+    private final Streams streams;
+    private final Consumer<Map<String, Object>> emit;
+    /** Open windows; each tick checks them all, so this stays as small as the live keys. */
+    private final Map<Key, Accum> open = new LinkedHashMap<>();
+    private long now;
+
+    EventAggregator(Streams streams, Consumer<Map<String, Object>> emit) {
+        this.streams = streams;
+        this.emit = emit;
+    }
+
+    /** Add a sample to {@code topic}'s window for this player and key (may be null). */
+    void add(String topic, UUID player, String name, String key, double amount) {
+        Window window = streams.byTopic().get(topic);
+        if (window == null) return;
+        Key k = new Key(topic, player, key);
+        Accum a = open.computeIfAbsent(k, x -> new Accum(name, now));
+        a.count++;
+        a.sum += amount;
+        a.min = Math.min(a.min, amount);
+        a.max = Math.max(a.max, amount);
+        if (window.threshold() > 0 && a.sum >= window.threshold()) {
+            open.remove(k);
+            flush(k, a);
+        }
+    }
+
+    /** Advance the clock to server tick {@code tick} and emit windows that have run their time. */
+    void tick(long tick) {
+        now = tick;
+        for (Iterator<Map.Entry<Key, Accum>> it = open.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Accum> e = it.next();
+            Window window = streams.byTopic().get(e.getKey().topic());
+            if (now - e.getValue().opened < window.ticks()) continue;
+            it.remove();
+            flush(e.getKey(), e.getValue());
+        }
+    }
+
+    /** Emit every open window of {@code player} now, e.g. as they leave. */
+    void flush(UUID player) {
+        for (Iterator<Map.Entry<Key, Accum>> it = open.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Accum> e = it.next();
+            if (!Objects.equals(e.getKey().player(), player)) continue;
+            it.remove();
+            flush(e.getKey(), e.getValue());
+        }
+    }
+
+    private void flush(Key k, Accum a) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", k.topic());
+        event.put("player", a.player);
+        if (k.key() != null) event.put("key", k.key());
+        event.put("amount", (float) a.sum);
+        event.put("count", a.count);
+        event.put("min", (float) a.min);
+        event.put("max", (float) a.max);
+        event.put("ticks", now - a.opened);
+        emit.accept(event);
+    }
+}
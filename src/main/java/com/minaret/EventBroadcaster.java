@@ -1,16 +1,21 @@
 package com.minaret;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import net.minecraft.core.component.DataComponents;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.food.FoodProperties;
+import net.minecraft.world.item.Item;
+import net.neoforged.neoforge.event.entity.living.LivingDamageEvent;
 import net.neoforged.neoforge.event.entity.living.LivingDeathEvent;
 import net.neoforged.neoforge.event.entity.living.LivingEntityUseItemEvent;
 import net.neoforged.neoforge.event.entity.living.LivingHealEvent;
 import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerXpEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -23,57 +28,141 @@ import org.apache.logging.log4j.Logger;
  *   player_death   — player died (includes cause)
  *   player_kill    — player killed a mob (includes mob type)
  *   player_eat     — player finished eating food (includes item, nutrition, saturation)
- *   player_heal    — aggregated HP healed; fires when ≥10 HP accumulated or ≥1 min since last broadcast
+ *
+ * Aggregated streams, each enabled and sized by {@code aggregate_streams} (see {@link EventAggregator}):
+ *   player_heal          — HP healed
+ *   player_damage_dealt  — damage dealt, per target mob type
+ *   player_damage_taken  — damage taken, per damage type
+ *   player_xp            — experience points gained
+ *   player_kills         — kills, per mob type
+ *
+ * Each event name is a topic clients subscribe to; handlers return before doing
+ * any work when no client is subscribed to theirs and no replay buffer keeps it.
+ *
+ * The NeoForge callbacks run on the server thread and only publish a fixed-layout
+ * record (type, player UUID, one object, two numbers) to an {@link EventPipeline}.
+ * Names, aggregation, event maps and encoding happen on the pipeline's thread.
  */
 public class EventBroadcaster {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
-    // ── Heal aggregation ─────────────────────────────────────────────────
+    // ── Event types ── index into TOPICS
+    private static final int JOIN = 0;
+    private static final int LEAVE = 1;
+    private static final int DEATH = 2;
+    private static final int KILL = 3;
+    private static final int EAT = 4;
+    private static final int HEAL = 5;
+    private static final int DAMAGE_DEALT = 6;
+    private static final int DAMAGE_TAKEN = 7;
+    private static final int XP = 8;
+    private static final int KILLS = 9;
+    /** The server tick count, in {@code a}: advances the aggregation clock. */
+    private static final int TICK = 10;
+    private static final String[] TOPICS = {
+        "player_join", "player_leave", "player_death", "player_kill", "player_eat",
+        "player_heal", "player_damage_dealt", "player_damage_taken", "player_xp", "player_kills",
+    };
 
-    private static final float HEAL_THRESHOLD = 10f;
-    private static final long HEAL_TIMEOUT_MS = 60_000L;
+    private static volatile EventPipeline pipeline;
+    /** Aggregated streams in force; read on the server thread to skip disabled ones. */
+    private static volatile EventAggregator.Streams streams = EventAggregator.Streams.NONE;
+    /** Event thread only. */
+    private static EventAggregator aggregator;
 
-    /** Per-player heal accumulator. All access is on the server thread. */
-    private static final ConcurrentHashMap<UUID, HealAccum> healAccum = new ConcurrentHashMap<>();
+    /** Start the event thread. Called at server start. */
+    static void start() {
+        streams = EventAggregator.Streams.parse(MinaretConfig.AGGREGATE_STREAMS.get());
+        aggregator = new EventAggregator(streams, EventBroadcaster::broadcast);
+        EventPipeline p = new EventPipeline(MinaretConfig.EVENT_QUEUE_SIZE.get(), EventBroadcaster::deliver);
+        p.start();
+        pipeline = p;
+    }
 
-    private record HealAccum(float total, long lastBroadcastMs) {
-        HealAccum add(float amount) {
-            return new HealAccum(total + amount, lastBroadcastMs);
-        }
-        HealAccum reset() {
-            return new HealAccum(0f, System.currentTimeMillis());
-        }
+    /** Stop the event thread; queued events are discarded. */
+    static void stop() {
+        EventPipeline p = pipeline;
+        pipeline = null;
+        if (p != null) p.stop();
+        NAMES.clear();
+    }
+
+    /**
+     * Server thread, at the end of every tick: advance the aggregation clock and hand
+     * this tick's events to the event thread.
+     */
+    static void onServerTick(MinecraftServer server) {
+        EventPipeline p = pipeline;
+        if (p == null) return;
+        if (!streams.byTopic().isEmpty()) p.publish(TICK, null, null, server.getTickCount(), 0);
+        p.signal();
+    }
+
+    /** Events dropped because the event thread fell a full queue behind. */
+    static long droppedEvents() {
+        EventPipeline p = pipeline;
+        return p != null ? p.dropped() : 0;
+    }
+
+    /** Events waiting for the event thread. */
+    static long pendingEvents() {
+        EventPipeline p = pipeline;
+        return p != null ? p.backlog() : 0;
+    }
+
+    /** Whether {@code topic} is an enabled aggregated stream some client wants. */
+    private static boolean aggregating(String topic) {
+        return streams.enabled(topic) && wanted(topic);
+    }
+
+    private static void publish(int type, ServerPlayer player, Object ref, double a, double b) {
+        EventPipeline p = pipeline;
+        if (p != null) p.publish(type, player.getUUID(), ref, a, b);
     }
 
     // ── Broadcast helper ─────────────────────────────────────────────────
 
-    /** Send a JSON string to all connected clients. No-op if server not running. */
-    private static void broadcast(String json) {
+    /**
+     * Send an event to all connected clients. No-op if server not running.
+     * Each wire encoding (JSON / binary) is built once and shared by every client using it.
+     */
+    private static void broadcast(Map<String, Object> event) {
         WebSocketServer ws = MinaretMod.getWebSocketServer();
-        if (ws != null) ws.broadcast(json);
+        if (ws != null) ws.broadcastEvent(event);
     }
 
-    // ── JSON helper ──────────────────────────────────────────────────────
+    /** Whether any client wants events on {@code topic}. */
+    private static boolean wanted(String topic) {
+        WebSocketServer ws = MinaretMod.getWebSocketServer();
+        return ws != null && ws.hasSubscribers(topic);
+    }
+
+    // ── Event helper ─────────────────────────────────────────────────────
 
-    /** Build an event JSON string with "event" first, then additional key-value pairs. */
-    private static String event(String type, Object... kv) {
+    /** Build an event map with "event" first, then additional key-value pairs. */
+    private static Map<String, Object> event(String type, Object... kv) {
         Map<String, Object> m = new LinkedHashMap<>();
         m.put("event", type);
         for (int i = 0; i + 1 < kv.length; i += 2) m.put((String) kv[i], kv[i + 1]);
-        return SimpleJson.generate(m);
+        return m;
     }
 
     // ── Player join ──────────────────────────────────────────────────────
 
     public static void onPlayerJoin(PlayerEvent.PlayerLoggedInEvent event) {
-        broadcast(event("player_join", "player", event.getEntity().getName().getString()));
+        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        PlayerIndex.add(player);
+        // Always published: it is how the event thread learns the player's name
+        publish(JOIN, player, player.getName().getString(), 0, 0);
     }
 
     // ── Player leave ─────────────────────────────────────────────────────
 
     public static void onPlayerLeave(PlayerEvent.PlayerLoggedOutEvent event) {
-        broadcast(event("player_leave", "player", event.getEntity().getName().getString()));
+        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        PlayerIndex.remove(player);
+        publish(LEAVE, player, null, 0, 0);
     }
 
     // ── Death ────────────────────────────────────────────────────────────
@@ -81,64 +170,112 @@ public class EventBroadcaster {
     public static void onLivingDeath(LivingDeathEvent event) {
         // player died
         if (event.getEntity() instanceof ServerPlayer player) {
-            broadcast(event("player_death",
-                "player", player.getName().getString(),
-                "cause",  event.getSource().getMsgId()
-            ));
+            if (wanted("player_death")) publish(DEATH, player, event.getSource().getMsgId(), 0, 0);
             return;
         }
 
         // player killed a mob
         if (event.getSource().getEntity() instanceof ServerPlayer killer) {
-            broadcast(event("player_kill",
-                "player", killer.getName().getString(),
-                "mob",    event.getEntity().getType().toShortString()
-            ));
+            if (wanted("player_kill")) publish(KILL, killer, event.getEntity().getType(), 0, 0);
+            if (aggregating("player_kills")) publish(KILLS, killer, event.getEntity().getType(), 1, 0);
+        }
+    }
+
+    // ── Damage (aggregated) ──────────────────────────────────────────────
+
+    public static void onLivingDamage(LivingDamageEvent.Post event) {
+        float damage = event.getNewDamage();
+        if (damage <= 0) return;
+        if (event.getEntity() instanceof ServerPlayer player && aggregating("player_damage_taken")) {
+            publish(DAMAGE_TAKEN, player, event.getSource().getMsgId(), damage, 0);
+        }
+        if (event.getSource().getEntity() instanceof ServerPlayer attacker && aggregating("player_damage_dealt")) {
+            publish(DAMAGE_DEALT, attacker, event.getEntity().getType(), damage, 0);
         }
     }
 
+    // ── Experience (aggregated) ──────────────────────────────────────────
+
+    public static void onXpChange(PlayerXpEvent.XpChange event) {
+        if (event.getAmount() <= 0) return;
+        if (!(event.getEntity() instanceof ServerPlayer player) || !aggregating("player_xp")) return;
+        publish(XP, player, null, event.getAmount(), 0);
+    }
+
     // ── Player ate food ──────────────────────────────────────────────────
 
     public static void onItemUseFinish(LivingEntityUseItemEvent.Finish event) {
-        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        if (!(event.getEntity() instanceof ServerPlayer player) || !wanted("player_eat")) return;
 
         FoodProperties food = event.getItem().get(DataComponents.FOOD);
         if (food == null) return;
 
-        String item = event.getItem().getItem().getDescriptionId();
-        int dot = item.lastIndexOf('.');
-        String itemShort = dot >= 0 ? item.substring(dot + 1) : item;
-
-        broadcast(event("player_eat",
-            "player",     player.getName().getString(),
-            "item",       itemShort,
-            "nutrition",  food.nutrition(),
-            "saturation", food.saturation()
-        ));
+        publish(EAT, player, event.getItem().getItem(), food.nutrition(), food.saturation());
     }
 
     // ── Player healed (aggregated) ───────────────────────────────────────
 
     public static void onLivingHeal(LivingHealEvent event) {
-        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        if (!(event.getEntity() instanceof ServerPlayer player) || !aggregating("player_heal")) return;
+        publish(HEAL, player, null, event.getAmount(), 0);
+    }
+
+    // ── Event thread ─────────────────────────────────────────────────────
 
-        UUID uuid = player.getUUID();
-        HealAccum accum = healAccum
-            .getOrDefault(uuid, new HealAccum(0f, System.currentTimeMillis()))
-            .add(event.getAmount());
+    /** Online players' names, from join events. Event thread only. */
+    private static final Map<UUID, String> NAMES = new HashMap<>();
 
-        long now = System.currentTimeMillis();
-        boolean thresholdReached = accum.total() >= HEAL_THRESHOLD;
-        boolean timedOut = (now - accum.lastBroadcastMs()) >= HEAL_TIMEOUT_MS;
+    /** Turn one published record into its event and send it to subscribers. */
+    private static void deliver(EventPipeline.Slot e) {
+        if (e.type == TICK) {
+            aggregator.tick((long) e.a);
+            return;
+        }
+        UUID uuid = e.player();
+        if (e.type == JOIN) NAMES.put(uuid, (String) e.ref);
+        String player = name(uuid);
+        if (e.type == LEAVE) {
+            // A leaving player's partial windows go out now rather than never
+            aggregator.flush(uuid);
+            NAMES.remove(uuid);
+        }
+        String topic = TOPICS[e.type];
+        if (!wanted(topic)) return;
 
-        if (thresholdReached || timedOut) {
-            broadcast(event("player_heal",
-                "player", player.getName().getString(),
-                "amount", accum.total()
+        switch (e.type) {
+            case JOIN, LEAVE -> broadcast(event(topic, "player", player));
+            case DEATH -> broadcast(event(topic,
+                "player", player,
+                "cause",  e.ref
+            ));
+            case KILL -> broadcast(event(topic,
+                "player", player,
+                "mob",    ((EntityType<?>) e.ref).toShortString()
             ));
-            healAccum.put(uuid, accum.reset());
-        } else {
-            healAccum.put(uuid, accum);
+            case EAT -> {
+                String item = ((Item) e.ref).getDescriptionId();
+                int dot = item.lastIndexOf('.');
+                String itemShort = dot >= 0 ? item.substring(dot + 1) : item;
+
+                broadcast(event(topic,
+                    "player",     player,
+                    "item",       itemShort,
+                    "nutrition",  (int) e.a,
+                    "saturation", (float) e.b
+                ));
+            }
+            case HEAL, XP -> aggregator.add(topic, uuid, player, null, e.a);
+            case DAMAGE_TAKEN -> aggregator.add(topic, uuid, player, (String) e.ref, e.a);
+            case DAMAGE_DEALT, KILLS -> aggregator.add(topic, uuid, player, ((EntityType<?>) e.ref).toShortString(), e.a);
+            default -> LOGGER.warn("Unknown event type {}", e.type);
         }
     }
+
+    /** The player's name: from their join event, else the latest snapshot, else the UUID. */
+    private static String name(UUID uuid) {
+        String name = NAMES.get(uuid);
+        if (name != null) return name;
+        PlayerSnapshot.Player p = PlayerSnapshot.current().player(uuid.toString());
+        return p != null ? p.name() : uuid.toString();
+    }
 }
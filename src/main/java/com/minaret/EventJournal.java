@@ -0,0 +1,393 @@
+package com.minaret;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append-only journal of broadcast events in memory-mapped segment files.
+ *
+ * Each segment is a preallocated file named after the sequence number of its first
+ * event, holding an 8-byte header (magic, version) and then records:
+ *
+ *   int    payload length
+ *   long   sequence number
+ *   long   time, epoch milliseconds
+ *   bytes  payload: the event map in {@link BinaryProtocol} encoding
+ *   int    CRC32 of sequence number, time and payload
+ *
+ * The length is written last, so a record torn by a crash reads as the zeroed end of
+ * the segment. When a segment fills, appending moves to a spare one that was zero-filled
+ * ahead of time — a rename and a map. The full segment is then forced to disk, the
+ * oldest deleted beyond the size and age limits and the next spare prepared, all on a
+ * helper thread. On open, the newest segment is scanned for its last intact record and
+ * appending resumes there, so sequence numbers carry on across restarts.
+ *
+ * One writer — the event thread, under {@link WebSocketServer}'s replay lock. Readers
+ * on any thread map segments themselves and stop at the writer's published end.
+ */
+final class EventJournal {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4D4E4A31; // "MNJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    /** Length, sequence number, time. */
+    private static final int RECORD_HEAD = Integer.BYTES + 2 * Long.BYTES;
+    private static final int RECORD_OVERHEAD = RECORD_HEAD + Integer.BYTES;
+    private static final String SUFFIX = ".journal";
+    private static final int ZERO_CHUNK = 64 * 1024;
+    /** The next segment, preallocated; its name doesn't end in {@link #SUFFIX}, so it isn't listed. */
+    private static final String SPARE = "spare" + SUFFIX + ".tmp";
+
+    /** One journaled event; {@code event} is the map as broadcast, without {@code seq}. */
+    record Entry(long seq, long time, Map<String, Object> event) {}
+
+    /** The segment being appended to and the end of its last complete record. */
+    private record Tail(long firstSeq, int end) {}
+
+    private record Segment(long firstSeq, Path path, long size, long modified) {}
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+    private volatile Tail tail;
+    private long latest;
+    private boolean failed;
+    /** Forces full segments, applies retention and prepares the spare, off the writer's lock. */
+    private final ExecutorService helper = Executors.newSingleThreadExecutor(
+        r -> Thread.ofPlatform().name("minaret-journal").daemon().unstarted(r)
+    );
+    /** True once the spare is ready, false if preparing it failed. */
+    private Future<Boolean> spare;
+
+    /**
+     * Open the journal in {@code dir}, recovering its newest segment.
+     *
+     * @param retentionMillis delete segments last written longer ago than this (0: never)
+     */
+    EventJournal(Path dir, int segmentBytes, long retentionBytes, long retentionMillis) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        Files.createDirectories(dir);
+        List<Segment> segments = segments();
+        if (segments.isEmpty()) {
+            rotate(1);
+        } else {
+            recover(segments.get(segments.size() - 1));
+            retain();
+            if (spare == null) finishRotation(null, null);
+        }
+        LOGGER.info("Event journal at {}: {} segment(s), latest event {}", dir, segments().size(), latest);
+    }
+
+    /** Sequence number of the latest journaled event, 0 if none. */
+    long latest() {
+        return latest;
+    }
+
+    /**
+     * Append an event. Sequence numbers must increase. After a write error the
+     * journal logs it once and stops appending.
+     */
+    void append(long seq, long time, Map<String, Object> event) {
+        if (failed) return;
+        byte[] payload = BinaryProtocol.encode(event);
+        int size = RECORD_OVERHEAD + payload.length;
+        if (size > segmentBytes - HEADER) {
+            LOGGER.warn("Event {} ({} bytes) is larger than a journal segment; not journaled", seq, payload.length);
+            return;
+        }
+        try {
+            if (tail.end + size > buf.capacity()) rotate(seq);
+            int pos = tail.end;
+            buf.putLong(pos + Integer.BYTES, seq);
+            buf.putLong(pos + Integer.BYTES + Long.BYTES, time);
+            buf.put(pos + RECORD_HEAD, payload);
+            crc.reset();
+            crc.update(buf.slice(pos + Integer.BYTES, RECORD_HEAD - Integer.BYTES + payload.length));
+            buf.putInt(pos + RECORD_HEAD + payload.length, (int) crc.getValue());
+            buf.putInt(pos, payload.length);
+            latest = seq;
+            tail = new Tail(tail.firstSeq, pos + size);
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            LOGGER.error("Event journal write failed; journaling stopped", e);
+        }
+    }
+
+    /** Force the current segment to disk and release it. */
+    void close() {
+        helper.shutdown();
+        try {
+            helper.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (buf != null) buf.force();
+            if (channel != null) channel.close();
+            Files.deleteIfExists(dir.resolve(SPARE));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Error closing event journal", e);
+        }
+    }
+
+    /**
+     * Journaled events with sequence number in {@code [fromSeq, toSeq]} and time in
+     * {@code [since, until]}, oldest first, to {@code action} until it returns false.
+     * Reading stops at the first event after {@code until}. Any thread.
+     */
+    void read(long fromSeq, long toSeq, long since, long until, Predicate<Entry> action) throws IOException {
+        Tail t = tail;
+        List<Segment> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            Segment s = segments.get(i);
+            if (s.firstSeq > toSeq || s.firstSeq > t.firstSeq) return;
+            // Wholly before the range if the next segment starts at or before it
+            if (i + 1 < segments.size()) {
+                Segment next = segments.get(i + 1);
+                if (next.firstSeq <= fromSeq || (since > Long.MIN_VALUE && firstTime(next) < since)) continue;
+            }
+            ByteBuffer b = map(s, s.firstSeq == t.firstSeq ? t.end : s.size);
+            if (b == null) continue;
+            boolean[] more = {true};
+            scan(b, (seq, time, off, len) -> {
+                if (seq > toSeq || time > until) return more[0] = false;
+                if (seq < fromSeq || time < since) return true;
+                byte[] payload = new byte[len];
+                b.get(off, payload);
+                @SuppressWarnings("unchecked")
+                Map<String, Object> event = (Map<String, Object>) BinaryProtocol.decode(payload, 0, len);
+                return more[0] = action.test(new Entry(seq, time, event));
+            });
+            if (!more[0]) return;
+        }
+    }
+
+    // ── Segments ─────────────────────────────────────────────────────────
+
+    /** Segment files, oldest first. */
+    private List<Segment> segments() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(SUFFIX)) continue;
+                try {
+                    long firstSeq = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                    segments.add(new Segment(firstSeq, path, Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+                } catch (NumberFormatException | NoSuchFileException e) {
+                    // not a segment, or deleted by retention meanwhile
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(a.firstSeq, b.firstSeq));
+        return segments;
+    }
+
+    private Path path(long firstSeq) {
+        return dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+    }
+
+    /**
+     * Start a new segment whose first event will be {@code firstSeq}: the spare if it is
+     * ready, else one preallocated here. The rest is left to the helper thread.
+     */
+    private void rotate(long firstSeq) throws IOException {
+        MappedByteBuffer full = buf;
+        FileChannel fullChannel = channel;
+        Path path = path(firstSeq);
+        if (!takeSpare(path)) preallocate(path);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, VERSION);
+        tail = new Tail(firstSeq, HEADER);
+        latest = firstSeq - 1;
+        finishRotation(full, fullChannel);
+    }
+
+    /** On the helper thread: force and release the full segment, apply retention, prepare the next spare. */
+    private void finishRotation(MappedByteBuffer full, FileChannel fullChannel) {
+        spare = helper.submit(() -> {
+            try {
+                if (full != null) full.force();
+                if (fullChannel != null) fullChannel.close();
+                retain();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Event journal rotation cleanup failed", e);
+            }
+            try {
+                preallocate(dir.resolve(SPARE));
+                return true;
+            } catch (IOException e) {
+                LOGGER.warn("Could not preallocate the next journal segment: {}", e.getMessage());
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Rename the spare to {@code path}: false if there is none. Waits only if segments
+     * fill faster than the helper can zero one.
+     */
+    private boolean takeSpare(Path path) throws IOException {
+        if (spare == null) return false;
+        try {
+            if (!spare.get()) return false;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        Files.move(dir.resolve(SPARE), path, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /** Create {@code path} as a zeroed, full-size segment file. */
+    private void preallocate(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            // Real blocks up front: a full disk fails here, not as a fault on a mapped write
+            ByteBuffer zeros = ByteBuffer.allocate(ZERO_CHUNK);
+            for (long pos = 0; pos < segmentBytes; pos += ZERO_CHUNK) {
+                zeros.clear().limit((int) Math.min(ZERO_CHUNK, segmentBytes - pos));
+                while (zeros.hasRemaining()) ch.write(zeros, pos + zeros.position());
+            }
+        }
+    }
+
+    /** Reopen the newest segment and find where appending resumes. */
+    private void recover(Segment s) throws IOException {
+        channel = FileChannel.open(s.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER + RECORD_OVERHEAD) {
+            channel.close();
+            buf = null;
+            rotate(s.firstSeq);
+            return;
+        }
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            LOGGER.warn("Event journal segment {} has an unknown header; starting a new one", s.path);
+            channel.close();
+            buf = null;
+            Files.move(s.path, s.path.resolveSibling(s.path.getFileName() + ".bad"));
+            rotate(s.firstSeq);
+            return;
+        }
+        long[] last = {s.firstSeq - 1};
+        int end = scan(buf, (seq, time, off, len) -> {
+            last[0] = seq;
+            return true;
+        });
+        if (end + Integer.BYTES <= buf.capacity() && buf.getInt(end) != 0) {
+            LOGGER.warn("Event journal segment {}: discarding a torn record at offset {}", s.path, end);
+            for (int i = end; i < buf.capacity(); i++) buf.put(i, (byte) 0);
+        }
+        tail = new Tail(s.firstSeq, end);
+        latest = last[0];
+    }
+
+    /** Delete the oldest segments beyond the size and age limits; never the current one. */
+    private void retain() throws IOException {
+        List<Segment> segments = segments();
+        long total = 0;
+        for (Segment s : segments) total += s.size;
+        long cutoff = retentionMillis > 0 ? System.currentTimeMillis() - retentionMillis : Long.MIN_VALUE;
+        for (Segment s : segments) {
+            if (s.firstSeq >= tail.firstSeq || (total <= retentionBytes && s.modified >= cutoff)) break;
+            try {
+                Files.deleteIfExists(s.path);
+                total -= s.size;
+            } catch (IOException e) {
+                // e.g. still mapped by a reader on Windows; the next rotation retries
+                LOGGER.debug("Could not delete journal segment {}: {}", s.path, e.getMessage());
+                break;
+            }
+        }
+    }
+
+    /** Map the first {@code limit} bytes of a segment read-only, or null if it is gone or not a segment. */
+    private static ByteBuffer map(Segment s, long limit) throws IOException {
+        try (FileChannel ch = FileChannel.open(s.path, StandardOpenOption.READ)) {
+            long size = Math.min(limit, ch.size());
+            if (size < HEADER) return null;
+            ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return b.getInt(0) == MAGIC && b.getInt(4) == VERSION ? b : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /** Time of a segment's first event, or {@code Long.MAX_VALUE} if it has none. */
+    private static long firstTime(Segment s) throws IOException {
+        try (FileChannel ch = FileChannel.open(s.path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(RECORD_HEAD);
+            while (head.hasRemaining() && ch.read(head, HEADER + head.position()) > 0) {}
+            return !head.hasRemaining() && head.getInt(0) > 0 ? head.getLong(Integer.BYTES + Long.BYTES) : Long.MAX_VALUE;
+        } catch (NoSuchFileException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // ── Records ──────────────────────────────────────────────────────────
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        /** One intact record, payload at {@code off}; return false to stop. */
+        boolean visit(long seq, long time, int off, int len);
+    }
+
+    /**
+     * Visit the intact records of a segment in order, stopping at a zero length, a
+     * bad checksum, a sequence number out of order or the buffer's end. Returns the
+     * offset after the last intact record.
+     */
+    private static int scan(ByteBuffer b, RecordVisitor visitor) {
+        CRC32 check = new CRC32();
+        int limit = b.capacity();
+        int pos = HEADER;
+        long previous = 0;
+        while (pos + RECORD_OVERHEAD <= limit) {
+            int len = b.getInt(pos);
+            if (len <= 0 || len > limit - pos - RECORD_OVERHEAD) break;
+            long seq = b.getLong(pos + Integer.BYTES);
+            if (seq <= previous) break;
+            check.reset();
+            check.update(b.slice(pos + Integer.BYTES, RECORD_HEAD - Integer.BYTES + len));
+            if ((int) check.getValue() != b.getInt(pos + RECORD_HEAD + len)) break;
+            long time = b.getLong(pos + Integer.BYTES + Long.BYTES);
+            if (!visitor.visit(seq, time, pos + RECORD_HEAD, len)) break;
+            previous = seq;
+            pos += RECORD_OVERHEAD + len;
+        }
+        return pos;
+    }
+}
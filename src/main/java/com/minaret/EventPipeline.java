@@ -0,0 +1,140 @@
+package com.minaret;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Single-producer ring of fixed-layout event records, drained by one background
+ * thread.
+ *
+ * The server thread only copies a few fields into a preallocated slot and bumps a
+ * counter; the consumer turns records into events — names, maps, encoding — and
+ * delivers them. The consumer is woken once per tick by {@link #signal}, never per
+ * event, so publishing costs no system call. When the ring is full, new events are
+ * dropped and counted rather than blocking the tick.
+ */
+final class EventPipeline {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** Upper bound on delivery latency should a wake-up be missed. */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /** One event as the server thread left it. Only the consumer reads it. */
+    static final class Slot {
+        int type;
+        long uuidMost;
+        long uuidLeast;
+        /** An immutable game object or string the consumer resolves to text. */
+        Object ref;
+        double a;
+        double b;
+
+        UUID player() {
+            return new UUID(uuidMost, uuidLeast);
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    /** Next sequence to publish; written by the producer only. */
+    private final AtomicLong tail = new AtomicLong();
+    /** Next sequence to consume; written by the consumer only. */
+    private final AtomicLong head = new AtomicLong();
+    /** Producer's last read of {@link #head}, refreshed only when the ring looks full. */
+    private long headCache;
+    private final LongAdder dropped = new LongAdder();
+    private final Consumer<Slot> sink;
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    /** @param capacity rounded up to a power of two */
+    EventPipeline(int capacity, Consumer<Slot> sink) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) slots[i] = new Slot();
+        this.mask = size - 1;
+        this.sink = sink;
+        this.consumer = Thread.ofPlatform().name("minaret-events").daemon().unstarted(this::run);
+    }
+
+    void start() {
+        consumer.start();
+    }
+
+    /** Stop the consumer; events still queued are discarded. */
+    void stop() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Producer thread only: queue an event, or count it dropped if the ring is full.
+     * {@code player} may be null for events about no one.
+     */
+    boolean publish(int type, UUID player, Object ref, double a, double b) {
+        long seq = tail.get();
+        if (seq - headCache >= slots.length) {
+            headCache = head.get();
+            if (seq - headCache >= slots.length) {
+                dropped.increment();
+                return false;
+            }
+        }
+        Slot slot = slots[(int) seq & mask];
+        slot.type = type;
+        slot.uuidMost = player != null ? player.getMostSignificantBits() : 0;
+        slot.uuidLeast = player != null ? player.getLeastSignificantBits() : 0;
+        slot.ref = ref;
+        slot.a = a;
+        slot.b = b;
+        tail.lazySet(seq + 1);
+        return true;
+    }
+
+    /** Wake the consumer if anything is queued. Called once per tick. */
+    void signal() {
+        if (tail.get() != head.get()) LockSupport.unpark(consumer);
+    }
+
+    /** Events lost to a full ring. */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /** Events published but not yet delivered. */
+    long backlog() {
+        return tail.get() - head.get();
+    }
+
+    private void run() {
+        long seq = head.get();
+        while (running) {
+            long end = tail.get();
+            if (seq == end) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            for (; seq < end; seq++) {
+                Slot slot = slots[(int) seq & mask];
+                try {
+                    sink.accept(slot);
+                } catch (Exception e) {
+                    LOGGER.error("Event delivery failed", e);
+                }
+                slot.ref = null;
+                head.lazySet(seq + 1);
+            }
+        }
+    }
+}
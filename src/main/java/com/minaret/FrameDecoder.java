@@ -0,0 +1,391 @@
+package com.minaret;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.ProtocolException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Streaming RFC 6455 frame decoder — one per connection.
+ *
+ * Bytes are fed in whatever chunks the socket delivers; the decoder keeps only the
+ * partial header, the 4-byte mask and the message being assembled. Handles FIN /
+ * continuation fragments (with control frames interleaved), 16- and 64-bit lengths up
+ * to a per-message cap.
+ *
+ * Payloads are handed to the {@link Handler} as views — {@code (buf, off, len)} —
+ * rather than copies: a complete frame that sits in one read chunk is unmasked in
+ * place and passed straight through, and fragmented messages are assembled in a
+ * buffer that is reused between messages. Nothing is allocated per frame on either
+ * path; decoding to a String is left to the handler.
+ *
+ * Text is checked to be well-formed UTF-8 as it arrives — fragment by fragment, so a
+ * bad message fails before it is assembled — and rejected with {@link InvalidText}.
+ *
+ * Not thread-safe: one reader.
+ */
+final class FrameDecoder {
+
+    /** A text message that is not well-formed UTF-8 (close code 1007). */
+    static final class InvalidText extends ProtocolException {
+        InvalidText() {
+            super("Invalid UTF-8 in text message");
+        }
+    }
+
+    /**
+     * Receives complete messages and control frames. Payload views are only valid
+     * for the duration of the call — copy anything that must outlive it.
+     */
+    interface Handler {
+        /** A complete text message: well-formed UTF-8 bytes {@code utf8[off, off + len)}. */
+        void onText(byte[] utf8, int off, int len) throws IOException;
+
+        /** A complete binary message. */
+        void onBinary(byte[] buf, int off, int len) throws IOException;
+
+        void onPing(byte[] buf, int off, int len) throws IOException;
+
+        void onPong(byte[] buf, int off, int len) throws IOException;
+
+        /** Peer sent a close frame; no further input will be decoded. */
+        void onClose() throws IOException;
+    }
+
+    private static final int OPCODE_CONTINUATION = 0x0;
+    private static final int MAX_HEADER = 14;
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final int INITIAL_MESSAGE_CAPACITY = 1024;
+    private static final byte[] EMPTY = new byte[0];
+    /** Assembly buffers up to this size are kept for the next message. */
+    private static final int RETAINED_MESSAGE_CAPACITY = 16_384;
+    /** Eight payload bytes at a time for unmasking; any offset, native-agnostic order. */
+    private static final VarHandle LONGS =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Handler handler;
+    private final int maxMessage;
+    /** Negotiated compression, or null. Compressed messages are inflated at FIN. */
+    private PerMessageDeflate deflate;
+
+    // ── Current frame ──
+    private final byte[] header = new byte[MAX_HEADER];
+    private int headerHave = 0;
+    private int opcode;
+    private boolean fin;
+    private boolean masked;
+    private final byte[] mask = new byte[4];
+    private int maskPos;
+    private long remaining = -1; // -1 = reading header
+    private byte[] control;
+    private int controlLen;
+
+    // ── Current message (spans fragments) ──
+    private int messageOpcode = -1; // -1 = none in progress
+    private boolean messageCompressed;
+    private long messageSize;
+    /** Payload assembled so far (still compressed if RSV1 was set); grows on demand. */
+    private byte[] raw;
+    private int rawLen;
+
+    // ── UTF-8 check (spans fragments) ──
+    /** Continuation bytes still expected in the current sequence. */
+    private int utf8Need;
+    /** Allowed range for the next continuation byte (narrower after E0, ED, F0, F4). */
+    private int utf8Lo = 0x80;
+    private int utf8Hi = 0xBF;
+
+    private boolean closed = false;
+
+    FrameDecoder(Handler handler, int maxMessage) {
+        this.handler = handler;
+        this.maxMessage = maxMessage;
+    }
+
+    void setDeflate(PerMessageDeflate deflate) {
+        this.deflate = deflate;
+    }
+
+    /**
+     * Decode {@code buf[off, off + len)}. Masked payload bytes are unmasked in place.
+     * Returns false once a close frame has been handled — stop reading.
+     *
+     * @throws ProtocolException on malformed frames or messages over the size cap
+     */
+    boolean feed(byte[] buf, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end && !closed) {
+            if (remaining < 0) {
+                // Fast path: whole unfragmented frame in this chunk, nothing pending
+                if (headerHave == 0 && messageOpcode < 0) {
+                    int used = tryWholeFrame(buf, off, end);
+                    if (used > 0) {
+                        off += used;
+                        continue;
+                    }
+                }
+                off = readHeader(buf, off, end);
+                continue;
+            }
+
+            int n = (int) Math.min(remaining, end - off);
+            if (masked) unmask(buf, off, n);
+            payload(buf, off, n);
+            off += n;
+            remaining -= n;
+            if (remaining == 0) endOfFrame();
+        }
+        return !closed;
+    }
+
+    // ── Header ──────────────────────────────────────────────────────────
+
+    /** Needed header size from the first two bytes. */
+    private static int headerSize(byte b1) {
+        int len = b1 & 0x7F;
+        int size = len == 126 ? 4 : len == 127 ? 10 : 2;
+        return (b1 & 0x80) != 0 ? size + 4 : size;
+    }
+
+    /**
+     * Decode a complete unfragmented data or control frame directly from {@code buf}.
+     * Returns bytes consumed, or 0 to fall back to the streaming path.
+     */
+    private int tryWholeFrame(byte[] buf, int off, int end) throws IOException {
+        if (end - off < 2) return 0;
+        int b0 = buf[off] & 0xFF;
+        int op = b0 & 0x0F;
+        if ((b0 & 0x80) == 0 || (b0 & 0x70) != 0) return 0; // fragmented or RSV bits
+        if (op == OPCODE_CONTINUATION) return 0;
+        if (op > WebSocketProtocol.OPCODE_BINARY && op < WebSocketProtocol.OPCODE_CLOSE) return 0; // reserved: let startFrame reject
+
+        int hs = headerSize(buf[off + 1]);
+        if (end - off < hs) return 0;
+        long len = payloadLength(buf, off);
+        // Negative (top bit set) or oversized: startFrame rejects or streams it
+        if (len < 0 || len > maxMessage || end - off - hs < len) return 0;
+
+        int p = off + hs;
+        int n = (int) len;
+        if ((buf[off + 1] & 0x80) != 0) {
+            System.arraycopy(buf, p - 4, mask, 0, 4);
+            maskPos = 0;
+            unmask(buf, p, n);
+        }
+        if (op == WebSocketProtocol.OPCODE_TEXT) {
+            checkUtf8(buf, p, n);
+            endUtf8();
+            handler.onText(buf, p, n);
+        } else if (op == WebSocketProtocol.OPCODE_BINARY) {
+            handler.onBinary(buf, p, n);
+        } else {
+            if (n > MAX_CONTROL_PAYLOAD) throw new ProtocolException("Control frame too long: " + n);
+            control(op, buf, p, n);
+        }
+        return hs + n;
+    }
+
+    private int readHeader(byte[] buf, int off, int end) throws IOException {
+        int need = headerHave < 2 ? 2 : headerSize(header[1]);
+        int take = Math.min(need - headerHave, end - off);
+        System.arraycopy(buf, off, header, headerHave, take);
+        headerHave += take;
+        off += take;
+        if (headerHave < need) return off;
+        if (need == 2 && headerSize(header[1]) > 2) return off; // extended length / mask follow
+
+        startFrame();
+        headerHave = 0;
+        if (remaining == 0) endOfFrame();
+        return off;
+    }
+
+    private static long payloadLength(byte[] h, int off) {
+        int len = h[off + 1] & 0x7F;
+        if (len == 126) return ((h[off + 2] & 0xFF) << 8) | (h[off + 3] & 0xFF);
+        if (len == 127) {
+            long v = 0;
+            for (int i = 0; i < 8; i++) v = (v << 8) | (h[off + 2 + i] & 0xFF);
+            return v;
+        }
+        return len;
+    }
+
+    private void startFrame() throws IOException {
+        int b0 = header[0] & 0xFF;
+        fin = (b0 & 0x80) != 0;
+        boolean rsv1 = (b0 & 0x40) != 0;
+        if ((b0 & 0x30) != 0) throw new ProtocolException("Reserved bits set");
+        opcode = b0 & 0x0F;
+        masked = (header[1] & 0x80) != 0;
+        long len = payloadLength(header, 0);
+        if (len < 0) throw new ProtocolException("Negative payload length");
+        if (masked) {
+            System.arraycopy(header, headerSize(header[1]) - 4, mask, 0, 4);
+            maskPos = 0;
+        }
+        remaining = len;
+
+        if (opcode >= WebSocketProtocol.OPCODE_CLOSE) {
+            if (!fin || rsv1 || len > MAX_CONTROL_PAYLOAD) {
+                throw new ProtocolException("Invalid control frame");
+            }
+            if (control == null) control = new byte[MAX_CONTROL_PAYLOAD];
+            controlLen = 0;
+            return;
+        }
+
+        if (opcode == OPCODE_CONTINUATION) {
+            if (messageOpcode < 0) throw new ProtocolException("Continuation without a message");
+            if (rsv1) throw new ProtocolException("RSV1 on continuation frame");
+        } else if (opcode == WebSocketProtocol.OPCODE_TEXT || opcode == WebSocketProtocol.OPCODE_BINARY) {
+            if (messageOpcode >= 0) throw new ProtocolException("New message before previous FIN");
+            if (rsv1 && deflate == null) throw new ProtocolException("RSV1 without permessage-deflate");
+            messageOpcode = opcode;
+            messageCompressed = rsv1;
+            messageSize = 0;
+            utf8Need = 0;
+        } else {
+            throw new ProtocolException("Unknown opcode: " + opcode);
+        }
+
+        messageSize += len;
+        if (messageSize > maxMessage) {
+            throw new ProtocolException("Message exceeds " + maxMessage + " bytes");
+        }
+    }
+
+    // ── Payload ─────────────────────────────────────────────────────────
+
+    /**
+     * XOR {@code buf[off, off + n)} with the mask in place, eight bytes per step.
+     * {@link #maskPos} carries the mask phase across calls.
+     */
+    private void unmask(byte[] buf, int off, int n) {
+        int i = 0;
+        if (n >= 8) {
+            // Mask repeated twice, rotated to the current phase; byte k sits in bits 8k
+            long m = 0;
+            for (int k = 7; k >= 0; k--) m = (m << 8) | (mask[(maskPos + k) & 3] & 0xFFL);
+            for (int last = n - 8; i <= last; i += 8) {
+                LONGS.set(buf, off + i, (long) LONGS.get(buf, off + i) ^ m);
+            }
+        }
+        // Whole words leave the phase unchanged
+        for (; i < n; i++) {
+            buf[off + i] ^= mask[maskPos];
+            maskPos = (maskPos + 1) & 3;
+        }
+    }
+
+    private void payload(byte[] buf, int off, int n) throws IOException {
+        if (opcode >= WebSocketProtocol.OPCODE_CLOSE) {
+            System.arraycopy(buf, off, control, controlLen, n);
+            controlLen += n;
+        } else {
+            // Compressed text can only be checked once inflated
+            if (messageOpcode == WebSocketProtocol.OPCODE_TEXT && !messageCompressed) checkUtf8(buf, off, n);
+            appendRaw(buf, off, n);
+        }
+    }
+
+    private void endOfFrame() throws IOException {
+        remaining = -1;
+        if (opcode >= WebSocketProtocol.OPCODE_CLOSE) {
+            control(opcode, control, 0, controlLen);
+            return;
+        }
+        if (!fin) return;
+
+        int op = messageOpcode;
+        messageOpcode = -1;
+        byte[] message = raw == null ? EMPTY : raw;
+        int length = rawLen;
+        rawLen = 0;
+        if (raw != null && raw.length > RETAINED_MESSAGE_CAPACITY) raw = null;
+        if (messageCompressed) {
+            message = deflate.inflate(message, length, maxMessage);
+            length = message.length;
+            if (op == WebSocketProtocol.OPCODE_TEXT) checkUtf8(message, 0, length);
+        }
+        if (op == WebSocketProtocol.OPCODE_BINARY) {
+            handler.onBinary(message, 0, length);
+        } else {
+            endUtf8();
+            handler.onText(message, 0, length);
+        }
+    }
+
+    // ── UTF-8 ───────────────────────────────────────────────────────────
+
+    /**
+     * Check {@code buf[off, off + n)} as the next bytes of a UTF-8 text, carrying a
+     * sequence split across calls. Rejects overlongs, surrogates and code points past
+     * U+10FFFF, like a {@code CharsetDecoder} set to REPORT, without allocating.
+     */
+    private void checkUtf8(byte[] buf, int off, int n) throws InvalidText {
+        int end = off + n;
+        int i = off;
+        while (i < end) {
+            if (utf8Need == 0) {
+                // ASCII runs, eight bytes at a time
+                while (i + 8 <= end && ((long) LONGS.get(buf, i) & 0x8080808080808080L) == 0) i += 8;
+                if (i == end) break;
+                int c = buf[i++] & 0xFF;
+                if (c < 0x80) continue;
+                utf8Lo = 0x80;
+                utf8Hi = 0xBF;
+                if (c >= 0xC2 && c <= 0xDF) {
+                    utf8Need = 1;
+                } else if (c >= 0xE0 && c <= 0xEF) {
+                    utf8Need = 2;
+                    if (c == 0xE0) utf8Lo = 0xA0;
+                    else if (c == 0xED) utf8Hi = 0x9F;
+                } else if (c >= 0xF0 && c <= 0xF4) {
+                    utf8Need = 3;
+                    if (c == 0xF0) utf8Lo = 0x90;
+                    else if (c == 0xF4) utf8Hi = 0x8F;
+                } else {
+                    throw new InvalidText();
+                }
+            } else {
+                int c = buf[i++] & 0xFF;
+                if (c < utf8Lo || c > utf8Hi) throw new InvalidText();
+                utf8Need--;
+                utf8Lo = 0x80;
+                utf8Hi = 0xBF;
+            }
+        }
+    }
+
+    /** The text ended: a sequence still open is truncated. */
+    private void endUtf8() throws InvalidText {
+        if (utf8Need != 0) {
+            utf8Need = 0;
+            throw new InvalidText();
+        }
+    }
+
+    private void control(int op, byte[] buf, int off, int len) throws IOException {
+        switch (op) {
+            case WebSocketProtocol.OPCODE_CLOSE -> {
+                closed = true;
+                handler.onClose();
+            }
+            case WebSocketProtocol.OPCODE_PING -> handler.onPing(buf, off, len);
+            case WebSocketProtocol.OPCODE_PONG -> handler.onPong(buf, off, len);
+            default -> throw new ProtocolException("Unknown control opcode: " + op);
+        }
+    }
+
+    private void appendRaw(byte[] buf, int off, int n) {
+        if (raw == null) raw = new byte[Math.max(INITIAL_MESSAGE_CAPACITY, n)];
+        if (rawLen + n > raw.length) {
+            raw = Arrays.copyOf(raw, (int) Math.min(maxMessage, Math.max(rawLen + n, raw.length * 2L)));
+        }
+        System.arraycopy(buf, off, raw, rawLen, n);
+        rawLen += n;
+    }
+}
@@ -1,13 +1,17 @@
 package com.minaret;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.InteractionHand;
-import net.minecraft.world.effect.MobEffectInstance;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.item.ItemStack;
 import net.neoforged.neoforge.network.PacketDistributor;
@@ -15,28 +19,137 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Dispatches JSON messages to handlers: chat, command, getEffects.
+ * Dispatches JSON messages to handlers: chat, command, getEffects, getPlayer, use, cast, stats,
+ * cancel, subscribe, unsubscribe.
  * Used by both WebSocketServer and /minaret exec command.
+ *
+ * Handlers build responses as maps; the entry point decides their encoding —
+ * JSON text, or {@link BinaryProtocol} for binary-subprotocol clients. Each
+ * request type declares a {@link RequestHandler.Affinity}: server-thread handlers
+ * are queued on the shared {@link TickScheduler} in their type's priority lane, the
+ * others run straight away on the connection's thread — or, under the nio
+ * transport, on a virtual thread, so they never hold up a selector thread. A batch
+ * runs all of its handlers, in order, in one server-thread task.
+ *
+ * Other mods add request types through {@link RegisterRequestHandlersEvent}.
  */
 public final class MessageDispatcher {
 
     private static final Logger LOGGER = LogManager.getLogger();
     private static final String COLOR_GRAY = "\u00a77";
     private static final String COLOR_WHITE = "\u00a7f";
+    /** Server-thread work from all handlers, run within a budget each tick. */
+    private static final TickScheduler SCHEDULER = new TickScheduler();
+    /** Console, /minaret exec and chord requests: one shared, unlimited session. */
+    private static final ClientSession CONSOLE = new ClientSession(SCHEDULER.client(), null, null, null, Runnable::run);
+    /** Parsed commands; rebuilt with the configured size at each server start. */
+    private static volatile CommandParseCache commands = new CommandParseCache(0);
+    /** Configured {@code rate_limits}; read at each server start. */
+    private static volatile RateLimiter.Limits limits = RateLimiter.Limits.NONE;
+    /** Buckets per authenticated user, shared by all of that user's connections. */
+    private static final Map<String, RateLimiter> USER_LIMITERS = new ConcurrentHashMap<>();
 
-    @FunctionalInterface
-    private interface Handler {
-        void handle(Map<String, String> json, MinecraftServer server, Consumer<String> respond);
+    /** A registered request type; see {@link RegisterRequestHandlersEvent#register}. */
+    record Route(
+        String subject,
+        RequestHandler.Affinity affinity,
+        RequestHandler.Priority priority,
+        RequestHandler handler
+    ) {}
+
+    /**
+     * Keyed by {@code "type"}; insertion order is the legacy first-key-wins precedence.
+     * The built-ins until {@link #install} swaps in the registered set at server start.
+     */
+    private static volatile Map<String, Route> handlers = builtins();
+
+    /**
+     * A built-in that acts on the requesting client's session, which plain
+     * {@link RequestHandler}s never see. The dispatcher calls it at once.
+     */
+    private interface SessionHandler extends RequestHandler {
+        void handle(ClientSession session, Map<String, Object> args, Consumer<Map<String, Object>> respond);
+
+        @Override
+        default void handle(Map<String, Object> args, MinecraftServer server, Consumer<Map<String, Object>> respond) {
+            throw new IllegalStateException("Session handlers are called by the dispatcher");
+        }
+    }
+
+    /**
+     * A session handler that streams frames from another thread and answers when
+     * done. A batch answers all at once, so these cannot be batched.
+     */
+    private interface StreamingHandler extends SessionHandler {}
+
+    /** Events per {@code history} reply unless the request asks for fewer. */
+    private static final int DEFAULT_HISTORY_LIMIT = 1000;
+    private static final int MAX_HISTORY_LIMIT = 10_000;
+
+    /** No {@code timeoutMs}/{@code deadline} on the request. */
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    /** The built-in request types, in legacy precedence order. */
+    static Map<String, Route> builtins() {
+        var serverThread = RequestHandler.Affinity.SERVER_THREAD;
+        var connection = RequestHandler.Affinity.CONNECTION;
+        var snapshot = RequestHandler.Affinity.SNAPSHOT;
+        var interactive = RequestHandler.Priority.INTERACTIVE;
+        var normal = RequestHandler.Priority.NORMAL;
+        var bulk = RequestHandler.Priority.BULK;
+        Map<String, Route> routes = new LinkedHashMap<>();
+        routes.put("message",    new Route("message", serverThread, bulk, MessageDispatcher::handleChat));
+        routes.put("command",    new Route("command", serverThread, bulk, new RequestHandler() {
+            @Override
+            public void prepare(Map<String, Object> args, MinecraftServer server) {
+                if (MinaretConfig.COMMAND_PARSE_OFF_THREAD.get()) commands.prefetch(server, string(args, "command"));
+            }
+
+            @Override
+            public void handle(Map<String, Object> args, MinecraftServer server, Consumer<Map<String, Object>> respond) {
+                handleCommand(args, server, respond);
+            }
+        }));
+        routes.put("getEffects", new Route("player",  snapshot,     normal,      MessageDispatcher::handleGetEffects));
+        routes.put("getPlayer",  new Route("player",  snapshot,     normal,      MessageDispatcher::handleGetPlayer));
+        routes.put("use",        new Route("player",  serverThread, interactive, MessageDispatcher::handleUse));
+        routes.put("cast",       new Route("player",  serverThread, interactive, MessageDispatcher::handleCast));
+        routes.put("stats",      new Route(null,      connection,   normal,      MessageDispatcher::handleStats));
+        routes.put("cancel",     new Route("target",  connection,   normal,      (SessionHandler) MessageDispatcher::handleCancel));
+        routes.put("subscribe",  new Route("topics",  connection,   normal,      (SessionHandler) MessageDispatcher::handleSubscribe));
+        routes.put("unsubscribe", new Route(null,     connection,   normal,      (SessionHandler) MessageDispatcher::handleUnsubscribe));
+        routes.put("resume",     new Route("after",   connection,   normal,      (StreamingHandler) MessageDispatcher::handleResume));
+        routes.put("history",    new Route(null,      connection,   normal,      (StreamingHandler) MessageDispatcher::handleHistory));
+        return routes;
+    }
+
+    /** Replace the routing table with the built-ins plus everything registered on {@code event}. */
+    static void install(RegisterRequestHandlersEvent event) {
+        handlers = event.routes();
+        commands = new CommandParseCache(MinaretConfig.COMMAND_CACHE_SIZE.get());
+        limits = RateLimiter.Limits.parse(MinaretConfig.RATE_LIMITS.get());
+        USER_LIMITERS.clear();
+        SCHEDULER.clear();
+        PlayerSnapshot.clear();
+    }
+
+    /**
+     * A session for a new connection: its own scheduler turn, rate limits and event
+     * subscriptions, plus the limits of {@code user} (null if not authenticated)
+     * when those are enabled. Off-server handlers run on {@code handlers}.
+     */
+    static ClientSession newSession(String user, Subscriptions.Member events, Executor handlers) {
+        RateLimiter.Limits current = limits;
+        if (current.isEmpty()) return new ClientSession(SCHEDULER.client(), null, null, events, handlers);
+        RateLimiter userLimiter = user != null && MinaretConfig.RATE_LIMIT_PER_USER.get()
+            ? USER_LIMITERS.computeIfAbsent(user, u -> new RateLimiter(current))
+            : null;
+        return new ClientSession(SCHEDULER.client(), new RateLimiter(current), userLimiter, events, handlers);
     }
 
-    /** Ordered map: first key present in the incoming JSON wins. */
-    private static final Map<String, Handler> HANDLERS = new LinkedHashMap<>();
-    static {
-        HANDLERS.put("message",    MessageDispatcher::handleChat);
-        HANDLERS.put("command",    (json, server, respond) -> handleCommand(json.get("command"), server, respond));
-        HANDLERS.put("getEffects", (json, server, respond) -> handleGetEffects(json.get("getEffects"), server, respond));
-        HANDLERS.put("use",        MessageDispatcher::handleUse);
-        HANDLERS.put("cast",       MessageDispatcher::handleCast);
+    /** Server thread, at the start of every tick: run queued request work within the tick budget. */
+    static void onServerTick() {
+        SCHEDULER.runTick(MinaretConfig.TICK_BUDGET_NANOS.get());
     }
 
     private MessageDispatcher() {}
@@ -47,260 +160,677 @@ public final class MessageDispatcher {
         MinecraftServer server,
         Consumer<String> respond
     ) {
+        dispatch(CONSOLE, message, server, respond);
+    }
+
+    /** Dispatch a JSON message string from a WebSocket client. */
+    static void dispatch(
+        ClientSession session,
+        String message,
+        MinecraftServer server,
+        Consumer<String> respond
+    ) {
+        Consumer<Object> json = r -> respond.accept(SimpleJson.generate(r));
+        Object parsed;
         try {
             LOGGER.debug("Processing message: {}", message);
-            Map<String, String> json = SimpleJson.parseFlat(message);
-
-            for (var entry : HANDLERS.entrySet()) {
-                if (json.containsKey(entry.getKey())) {
-                    entry.getValue().handle(json, server, respond);
-                    return;
-                }
-            }
-            respondError(
-                respond,
-                null,
-                "Unknown message type. Use 'message', 'command', 'getEffects', 'use', or 'cast' fields."
-            );
+            parsed = SimpleJson.parseValue(message);
         } catch (Exception e) {
             LOGGER.error("Error processing message: {}", message, e);
-            respondError(respond, null, "Invalid JSON or processing error");
+            respondError(json::accept, null, "Invalid JSON or processing error");
+            return;
         }
+        dispatchParsed(session, parsed, server, json);
     }
 
-    private static void handleChat(
-        Map<String, String> json,
+    /**
+     * Dispatch a {@value BinaryProtocol#SUBPROTOCOL} request. Responses are
+     * handed back as maps (or a list of maps, for a batch) for the caller to encode.
+     */
+    static void dispatchBinary(
+        ClientSession session,
+        byte[] buf,
+        int off,
+        int len,
         MinecraftServer server,
-        Consumer<String> respond
+        Consumer<Object> respond
     ) {
-        String chatMessage = json.get("message");
-        String user = json.getOrDefault("user", null);
-        String chat = json.getOrDefault("chat", null);
-
-        server.execute(() -> {
-            StringBuilder sb = new StringBuilder();
-            if (chat != null && !chat.isEmpty()) {
-                sb.append(COLOR_GRAY).append("[").append(chat).append("]");
-            }
-            if (user != null && !user.isEmpty()) {
-                sb.append(COLOR_WHITE).append("<").append(user).append("> ");
+        Object parsed;
+        try {
+            parsed = BinaryProtocol.decode(buf, off, len);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Malformed binary request: {}", e.getMessage());
+            respondError(respond::accept, null, "Malformed binary request: " + e.getMessage());
+            return;
+        }
+        dispatchParsed(session, parsed, server, respond);
+    }
+
+    /** Common tail of both decoders: a single request, or a batch of them. */
+    private static void dispatchParsed(
+        ClientSession session,
+        Object parsed,
+        MinecraftServer server,
+        Consumer<Object> respond
+    ) {
+        if (parsed instanceof List<?> batch) {
+            dispatchBatch(session, batch, server, respond);
+        } else if (parsed instanceof Map<?, ?> map && map.get("batch") instanceof List<?> batch) {
+            dispatchBatch(session, batch, server, respond);
+        } else {
+            BiConsumer<RequestHandler.Priority, Runnable> onServer =
+                (priority, task) -> SCHEDULER.submit(session.tasks, priority, task);
+            dispatchOne(session, parsed, server, onServer, session.handlers, respond::accept);
+        }
+    }
+
+    /**
+     * Run a batch in order inside one server-thread task, so every request lands
+     * in the same tick, and answer with one list holding each request's response
+     * at its index. Validation errors cost their slot, not the batch.
+     */
+    private static void dispatchBatch(
+        ClientSession session,
+        List<?> requests,
+        MinecraftServer server,
+        Consumer<Object> respond
+    ) {
+        int max = MinaretConfig.MAX_BATCH_REQUESTS.get();
+        if (requests.size() > max) {
+            respondError(respond::accept, "batch", "Batch exceeds " + max + " requests");
+            return;
+        }
+
+        Object[] results = new Object[requests.size()];
+        List<Runnable> tasks = new ArrayList<>();
+        // The batch runs in the lane of its most urgent entry
+        RequestHandler.Priority[] lane = {RequestHandler.Priority.BULK};
+        BiConsumer<RequestHandler.Priority, Runnable> onServer = (priority, task) -> {
+            if (priority.compareTo(lane[0]) < 0) lane[0] = priority;
+            tasks.add(task);
+        };
+        for (int i = 0; i < results.length; i++) {
+            int slot = i;
+            Consumer<Map<String, Object>> into = r -> results[slot] = r;
+            Object request = requests.get(i);
+            if (request instanceof Map) {
+                dispatchOne(session, request, server, onServer, tasks::add, into);
             } else {
-                sb
-                    .append(COLOR_GRAY)
-                    .append("[WebSocket] ")
-                    .append(COLOR_WHITE);
+                respondError(into, null, "Batch entries must be objects");
             }
-            sb.append(COLOR_WHITE).append(chatMessage);
+        }
 
-            Component component = Component.literal(sb.toString());
-            for (ServerPlayer player : server.getPlayerList().getPlayers()) {
-                player.sendSystemMessage(component);
+        Runnable finish = () -> {
+            for (int i = 0; i < results.length; i++) {
+                int slot = i;
+                if (results[i] == null) respondError(r -> results[slot] = r, null, "Request failed");
             }
-            LOGGER.info("Chat: {}", chatMessage);
+            respond.accept(Arrays.asList(results));
+        };
+        if (tasks.isEmpty()) {
+            finish.run();
+            return;
+        }
+        SCHEDULER.submit(session.tasks, lane[0], () -> {
+            for (Runnable task : tasks) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    LOGGER.error("Batched request failed", e);
+                }
+            }
+            finish.run();
         });
+    }
 
-        respondSuccess(respond, "message");
+    /**
+     * Dispatch one decoded request. An optional {@code "id"} (any JSON value) is
+     * echoed as the first field of every response to the request, so clients can
+     * pipeline requests and match replies without waiting.
+     */
+    private static void dispatchOne(
+        ClientSession session,
+        Object parsed,
+        MinecraftServer server,
+        BiConsumer<RequestHandler.Priority, Runnable> onServer,
+        Executor offServer,
+        Consumer<Map<String, Object>> respond
+    ) {
+        Object id = parsed instanceof Map<?, ?> map ? map.get("id") : null;
+        if (id != null) {
+            Consumer<Map<String, Object>> untagged = respond;
+            respond = r -> {
+                Map<String, Object> tagged = new LinkedHashMap<>();
+                tagged.put("id", id);
+                tagged.putAll(r);
+                untagged.accept(tagged);
+            };
+        }
+        if (parsed instanceof Map<?, ?> map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> request = (Map<String, Object>) map;
+            dispatch(session, request, server, onServer, offServer, respond);
+        } else {
+            respondError(respond, null, "Request must be a JSON object");
+        }
     }
 
-    private static void handleCommand(
-        String command,
+    /**
+     * Dispatch an already-decoded request: by its {@code "type"} field with one
+     * lookup, or — legacy form, no {@code "type"} — by the first handler key it
+     * contains, whose value becomes the route's subject argument. The handler then
+     * runs on {@code onServer} or {@code offServer} according to its affinity,
+     * unless the session's rate limit turns it away.
+     */
+    private static void dispatch(
+        ClientSession session,
+        Map<String, Object> request,
         MinecraftServer server,
-        Consumer<String> respond
+        BiConsumer<RequestHandler.Priority, Runnable> onServer,
+        Executor offServer,
+        Consumer<Map<String, Object>> respond
     ) {
-        server.execute(() -> {
-            try {
-                CommandSourceStack source = server
-                    .createCommandSourceStack()
-                    .withSuppressedOutput();
-                int result = server
-                    .getCommands()
-                    .getDispatcher()
-                    .execute(command, source);
-
-                if (result > 0) {
-                    respondSuccess(
-                        respond,
-                        "command",
-                        "command",
-                        command,
-                        "result",
-                        String.valueOf(result)
-                    );
-                    LOGGER.info(
-                        "Command executed: {} (result: {})",
-                        command,
-                        result
-                    );
-                } else {
+        try {
+            Map<String, Route> routes = handlers;
+            String type;
+            Route route;
+            if (request.get("type") instanceof String t) {
+                type = t;
+                route = routes.get(type);
+                if (route == null) {
+                    respondError(respond, null, "Unknown type: " + type);
+                    return;
+                }
+            } else {
+                type = null;
+                route = null;
+                for (var entry : routes.entrySet()) {
+                    if (request.containsKey(entry.getKey())) {
+                        type = entry.getKey();
+                        route = entry.getValue();
+                        if (route.subject() != null) request.putIfAbsent(route.subject(), request.get(type));
+                        break;
+                    }
+                }
+                if (route == null) {
                     respondError(
                         respond,
-                        "command",
-                        "Command returned 0 - may lack permissions, be invalid, or had no effect",
-                        "command",
-                        command,
-                        "result",
-                        String.valueOf(result)
-                    );
-                    LOGGER.warn(
-                        "Command failed: {} (result: {})",
-                        command,
-                        result
+                        null,
+                        "Unknown message type. Use 'type' or one of the fields " + routes.keySet()
                     );
+                    return;
                 }
-            } catch (Exception e) {
-                respondError(
-                    respond,
-                    "command",
-                    e.getMessage() != null
-                        ? e.getMessage()
-                        : "Command execution failed",
-                    "command",
-                    command
-                );
-                LOGGER.error("Command error: {}", command, e);
             }
-        });
+            if (route.subject() != null && request.get(route.subject()) == null) {
+                respondError(respond, type, "Missing '" + route.subject() + "' field");
+                return;
+            }
+            long deadline;
+            try {
+                deadline = deadline(request);
+            } catch (IllegalArgumentException e) {
+                respondError(respond, type, e.getMessage());
+                return;
+            }
+            if (expired(deadline)) {
+                respond(respond, "timeout", type, null);
+                return;
+            }
+            long wait = session.admit(type);
+            if (wait > 0) {
+                respondError(respond, type, "rate_limited", "retryAfterMs", (wait + 999_999) / 1_000_000);
+                return;
+            }
+            // A batch collects its off-server work instead of handing it to the session
+            if (route.handler() instanceof StreamingHandler && offServer != session.handlers) {
+                respondError(respond, type, "Cannot be batched");
+                return;
+            }
+            if (route.handler() instanceof SessionHandler h) {
+                if (offServer == session.handlers) {
+                    h.handle(session, request, respond);
+                } else {
+                    // In a batch it takes its turn with the others, in the batch task
+                    offServer.execute(() -> h.handle(session, request, respond));
+                }
+                return;
+            }
+            String resolved = type;
+            Route target = route;
+            Runnable task = () -> run(target, resolved, request, server, respond);
+            if (route.affinity() == RequestHandler.Affinity.SERVER_THREAD) {
+                prepare(route, type, request, server);
+                onServer.accept(route.priority(), queued(session, request.get("id"), type, deadline, task, respond));
+            } else {
+                offServer.execute(task);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error processing message: {}", request, e);
+            respondError(respond, null, "Invalid JSON or processing error");
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    private static void handleGetEffects(
-        String playerName,
+    /**
+     * Wrap queued server-thread work so it can be cancelled by {@code id} and is
+     * answered with {@code timeout} instead of running once {@code deadline} passes.
+     */
+    private static Runnable queued(
+        ClientSession session,
+        Object id,
+        String type,
+        long deadline,
+        Runnable task,
+        Consumer<Map<String, Object>> respond
+    ) {
+        if (id == null && deadline == NO_DEADLINE) return task;
+        ClientSession.Pending pending = id != null
+            ? session.track(id, () -> respond(respond, "cancelled", type, null))
+            : null;
+        return () -> {
+            if (pending != null && !session.start(id, pending)) return;
+            if (expired(deadline)) {
+                respond(respond, "timeout", type, null);
+                return;
+            }
+            task.run();
+        };
+    }
+
+    /**
+     * The request's deadline on the {@link System#nanoTime} clock — the earlier of
+     * {@code timeoutMs} from now and {@code deadline} (epoch milliseconds) — or
+     * {@link #NO_DEADLINE}.
+     */
+    private static long deadline(Map<String, Object> request) {
+        long now = System.nanoTime();
+        long deadline = NO_DEADLINE;
+        Object timeoutMs = request.get("timeoutMs");
+        if (timeoutMs != null) {
+            Long ms = integral(timeoutMs);
+            if (ms == null || ms < 0) throw new IllegalArgumentException("Invalid timeoutMs: " + timeoutMs);
+            deadline = now + Math.min(ms, Long.MAX_VALUE / 2_000_000) * 1_000_000;
+        }
+        Object at = request.get("deadline");
+        if (at != null) {
+            Long epochMs = integral(at);
+            if (epochMs == null) throw new IllegalArgumentException("Invalid deadline: " + at);
+            long ms = Math.max(-1, Math.min(epochMs - System.currentTimeMillis(), Long.MAX_VALUE / 2_000_000));
+            long d = now + ms * 1_000_000;
+            if (deadline == NO_DEADLINE || d - deadline < 0) deadline = d;
+        }
+        return deadline;
+    }
+
+    private static boolean expired(long deadline) {
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
+    /** An integral number (milliseconds, a sequence number), or null. */
+    private static Long integral(Object value) {
+        if (!(value instanceof Number n)) return null;
+        double d = n.doubleValue();
+        return d == Math.rint(d) && Math.abs(d) < 9.0e15 ? (long) d : null;
+    }
+
+    private static void prepare(Route route, String type, Map<String, Object> args, MinecraftServer server) {
+        try {
+            route.handler().prepare(args, server);
+        } catch (Exception e) {
+            LOGGER.debug("Request prepare failed: {}", type, e);
+        }
+    }
+
+    /** Call a handler, answering for it if it throws. */
+    private static void run(
+        Route route,
+        String type,
+        Map<String, Object> args,
         MinecraftServer server,
-        Consumer<String> respond
+        Consumer<Map<String, Object>> respond
     ) {
-        server.execute(() -> {
-            try {
-                ServerPlayer player = server
-                    .getPlayerList()
-                    .getPlayerByName(playerName);
-                if (player == null) {
-                    respondError(
-                        respond,
-                        "getEffects",
-                        "Player not found: " + playerName
-                    );
-                    return;
-                }
+        try {
+            route.handler().handle(args, server, respond);
+        } catch (Exception e) {
+            LOGGER.error("Request failed: {}", type, e);
+            respondError(respond, type, e.getMessage() != null ? e.getMessage() : "Request failed");
+        }
+    }
 
-                Collection<MobEffectInstance> effects =
-                    player.getActiveEffects();
-                List<Object> effectList = new ArrayList<>();
-                for (MobEffectInstance effect : effects) {
-                    Map<String, Object> e = new LinkedHashMap<>();
-                    e.put("effect", effect.getEffect().getRegisteredName());
-                    e.put(
-                        "duration",
-                        effect.isInfiniteDuration() ? -1 : effect.getDuration()
-                    );
-                    e.put("amplifier", effect.getAmplifier());
-                    effectList.add(e);
-                }
+    private static void handleChat(
+        Map<String, Object> args,
+        MinecraftServer server,
+        Consumer<Map<String, Object>> respond
+    ) {
+        String chatMessage = string(args, "message");
+        String user = string(args, "user");
+        String chat = string(args, "chat");
+
+        StringBuilder sb = new StringBuilder();
+        if (chat != null && !chat.isEmpty()) {
+            sb.append(COLOR_GRAY).append("[").append(chat).append("]");
+        }
+        if (user != null && !user.isEmpty()) {
+            sb.append(COLOR_WHITE).append("<").append(user).append("> ");
+        } else {
+            sb
+                .append(COLOR_GRAY)
+                .append("[WebSocket] ")
+                .append(COLOR_WHITE);
+        }
+        sb.append(COLOR_WHITE).append(chatMessage);
+
+        Component component = Component.literal(sb.toString());
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            player.sendSystemMessage(component);
+        }
+        LOGGER.info("Chat: {}", chatMessage);
 
+        respondSuccess(respond, "message");
+    }
+
+    private static void handleCommand(
+        Map<String, Object> args,
+        MinecraftServer server,
+        Consumer<Map<String, Object>> respond
+    ) {
+        String command = string(args, "command");
+        try {
+            CommandSourceStack source = server.createCommandSourceStack().withSuppressedOutput();
+            int result = server
+                .getCommands()
+                .getDispatcher()
+                .execute(commands.parse(server, command, source));
+
+            if (result > 0) {
                 respondSuccess(
                     respond,
-                    "getEffects",
-                    "player",
-                    playerName,
-                    "effects",
-                    effectList
+                    "command",
+                    "command",
+                    command,
+                    "result",
+                    String.valueOf(result)
+                );
+                LOGGER.info(
+                    "Command executed: {} (result: {})",
+                    command,
+                    result
                 );
-                LOGGER.info("getEffects for player: {}", playerName);
-            } catch (Exception e) {
+            } else {
                 respondError(
                     respond,
-                    "getEffects",
-                    e.getMessage() != null
-                        ? e.getMessage()
-                        : "Failed to get effects"
+                    "command",
+                    "Command returned 0 - may lack permissions, be invalid, or had no effect",
+                    "command",
+                    command,
+                    "result",
+                    String.valueOf(result)
+                );
+                LOGGER.warn(
+                    "Command failed: {} (result: {})",
+                    command,
+                    result
                 );
             }
-        });
+        } catch (Exception e) {
+            respondError(
+                respond,
+                "command",
+                e.getMessage() != null
+                    ? e.getMessage()
+                    : "Command execution failed",
+                "command",
+                command
+            );
+            LOGGER.error("Command error: {}", command, e);
+        }
+    }
+
+    /**
+     * The player's active effects, read from the latest {@link PlayerSnapshot} on
+     * the connection thread. {@code player} may also be a list or {@code "@a"}.
+     *
+     * JSON: {"type": "getEffects", "player": "playerName"}
+     */
+    private static void handleGetEffects(
+        Map<String, Object> args,
+        MinecraftServer server,
+        Consumer<Map<String, Object>> respond
+    ) {
+        Object target = args.get("player");
+        PlayerSnapshot snapshot = PlayerSnapshot.current();
+        if (isBulk(target)) {
+            List<Object> notFound = new ArrayList<>();
+            List<Object> players = new ArrayList<>();
+            for (PlayerSnapshot.Player p : select(target, snapshot.players(), snapshot::player, notFound)) {
+                players.add(entry("player", p.name(), "effects", effects(p)));
+            }
+            respondSuccess(
+                respond, "getEffects",
+                "players", players,
+                "notFound", notFound,
+                "snapshotTick", snapshot.tick()
+            );
+            return;
+        }
+
+        String playerName = string(args, "player");
+        PlayerSnapshot.Player player = snapshot.player(playerName);
+        if (player == null) {
+            respondError(
+                respond,
+                "getEffects",
+                "Player not found: " + playerName,
+                "snapshotTick",
+                snapshot.tick()
+            );
+            return;
+        }
+
+        respondSuccess(
+            respond,
+            "getEffects",
+            "player",
+            playerName,
+            "effects",
+            effects(player),
+            "snapshotTick",
+            snapshot.tick()
+        );
+        LOGGER.info("getEffects for player: {}", playerName);
+    }
+
+    /**
+     * Health, food, position, dimension, selected slot and effects of a player,
+     * read from the latest {@link PlayerSnapshot} on the connection thread.
+     * {@code player} may also be a list or {@code "@a"}.
+     *
+     * JSON: {"type": "getPlayer", "player": "playerName"}
+     */
+    private static void handleGetPlayer(
+        Map<String, Object> args,
+        MinecraftServer server,
+        Consumer<Map<String, Object>> respond
+    ) {
+        Object target = args.get("player");
+        PlayerSnapshot snapshot = PlayerSnapshot.current();
+        if (isBulk(target)) {
+            List<Object> notFound = new ArrayList<>();
+            List<Object> players = new ArrayList<>();
+            for (PlayerSnapshot.Player p : select(target, snapshot.players(), snapshot::player, notFound)) {
+                players.add(state(p));
+            }
+            respondSuccess(
+                respond, "getPlayer",
+                "players", players,
+                "notFound", notFound,
+                "snapshotTick", snapshot.tick()
+            );
+            return;
+        }
+
+        String playerName = string(args, "player");
+        PlayerSnapshot.Player p = snapshot.player(playerName);
+        if (p == null) {
+            respondError(
+                respond, "getPlayer",
+                "Player not found: " + playerName,
+                "snapshotTick", snapshot.tick()
+            );
+            return;
+        }
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("status", "success");
+        r.put("type", "getPlayer");
+        r.putAll(state(p));
+        r.put("snapshotTick", snapshot.tick());
+        respond.accept(r);
+    }
+
+    private static Map<String, Object> state(PlayerSnapshot.Player p) {
+        return entry(
+            "player", p.name(),
+            "uuid", p.uuid().toString(),
+            "health", p.health(),
+            "maxHealth", p.maxHealth(),
+            "food", p.food(),
+            "saturation", p.saturation(),
+            "x", p.x(),
+            "y", p.y(),
+            "z", p.z(),
+            "dimension", p.dimension(),
+            "selectedSlot", p.selectedSlot(),
+            "effects", effects(p)
+        );
+    }
+
+    private static List<Object> effects(PlayerSnapshot.Player player) {
+        List<Object> list = new ArrayList<>();
+        for (PlayerSnapshot.Effect effect : player.effects()) {
+            list.add(entry(
+                "effect", effect.effect(),
+                "duration", effect.duration(),
+                "amplifier", effect.amplifier()
+            ));
+        }
+        return list;
     }
 
     /**
      * Switches the player to the specified hotbar slot (0–8) and simulates a
      * right-click use of the item in that slot. Runs on the server thread.
+     * {@code player} may also be a list or {@code "@a"}; each player gets an entry.
      *
-     * JSON: {"use": "playerName", "slot": 3}
+     * JSON: {"type": "use", "player": "playerName", "slot": 3}
+     *   or legacy {"use": "playerName", "slot": 3}
      */
     private static void handleUse(
-        Map<String, String> json,
+        Map<String, Object> args,
         MinecraftServer server,
-        Consumer<String> respond
+        Consumer<Map<String, Object>> respond
     ) {
-        String playerName = json.get("use");
-        String slotStr = json.get("slot");
+        Object slotArg = args.get("slot");
 
-        if (slotStr == null) {
+        if (slotArg == null) {
             respondError(respond, "use", "Missing 'slot' field");
             return;
         }
-        int slot;
-        try {
-            slot = Integer.parseInt(slotStr);
-        } catch (NumberFormatException e) {
-            respondError(respond, "use", "Invalid slot: " + slotStr);
+        Integer slotNum = integer(slotArg);
+        if (slotNum == null) {
+            respondError(respond, "use", "Invalid slot: " + slotArg);
             return;
         }
+        int slot = slotNum;
         if (slot < 0 || slot > 8) {
             respondError(respond, "use", "Slot must be 0–8, got: " + slot);
             return;
         }
 
-        server.execute(() -> {
-            ServerPlayer player = server.getPlayerList().getPlayerByName(playerName);
-            if (player == null) {
-                respondError(respond, "use", "Player not found: " + playerName);
-                return;
+        Object target = args.get("player");
+        if (isBulk(target)) {
+            List<Object> notFound = new ArrayList<>();
+            List<Object> players = new ArrayList<>();
+            for (ServerPlayer player : select(target, PlayerIndex.all(), PlayerIndex::find, notFound)) {
+                String name = player.getName().getString();
+                try {
+                    players.add(entry("player", name, "status", "success", "item", useItem(player, slot)));
+                } catch (Exception e) {
+                    players.add(entry(
+                        "player", name,
+                        "status", "error",
+                        "error", e.getMessage() != null ? e.getMessage() : "useItem failed"
+                    ));
+                    LOGGER.error("use failed: player={} slot={}", name, slot, e);
+                }
             }
+            respondSuccess(
+                respond, "use",
+                "slot", String.valueOf(slot),
+                "players", players,
+                "notFound", notFound
+            );
+            return;
+        }
 
-            Inventory inv = player.getInventory();
-            int prevSlot = Compat.getInventorySlot(inv);
-            Compat.setInventorySlot(inv, slot);
+        String playerName = string(args, "player");
+        ServerPlayer player = PlayerIndex.find(playerName);
+        if (player == null) {
+            respondError(respond, "use", "Player not found: " + playerName);
+            return;
+        }
 
+        try {
+            String itemId = useItem(player, slot);
+            respondSuccess(
+                respond, "use",
+                "player", playerName,
+                "slot", String.valueOf(slot),
+                "item", itemId
+            );
+            LOGGER.info("use: player={} slot={} item={}", playerName, slot, itemId);
+        } catch (Exception e) {
+            respondError(
+                respond, "use",
+                e.getMessage() != null ? e.getMessage() : "useItem failed",
+                "player", playerName,
+                "slot", String.valueOf(slot)
+            );
+            LOGGER.error("use failed: player={} slot={}", playerName, slot, e);
+        }
+    }
+
+    /** Right-click the item in {@code slot}, then restore the selected slot; returns the item id. */
+    private static String useItem(ServerPlayer player, int slot) {
+        Inventory inv = player.getInventory();
+        int prevSlot = Compat.getInventorySlot(inv);
+        Compat.setInventorySlot(inv, slot);
+        try {
             ItemStack stack = player.getItemInHand(InteractionHand.MAIN_HAND);
             String itemId = stack.isEmpty() ? "air" : stack.getItem().getDescriptionId();
-
-            try {
-                player.gameMode.useItem(player, player.level(), stack, InteractionHand.MAIN_HAND);
-                respondSuccess(
-                    respond, "use",
-                    "player", playerName,
-                    "slot", String.valueOf(slot),
-                    "item", itemId
-                );
-                LOGGER.info("use: player={} slot={} item={}", playerName, slot, itemId);
-            } catch (Exception e) {
-                respondError(
-                    respond, "use",
-                    e.getMessage() != null ? e.getMessage() : "useItem failed",
-                    "player", playerName,
-                    "slot", String.valueOf(slot)
-                );
-                LOGGER.error("use failed: player={} slot={}", playerName, slot, e);
-            } finally {
-                Compat.setInventorySlot(inv, prevSlot);
-            }
-        });
+            player.gameMode.useItem(player, player.level(), stack, InteractionHand.MAIN_HAND);
+            return itemId;
+        } finally {
+            Compat.setInventorySlot(inv, prevSlot);
+        }
     }
 
     /**
      * Switches the player to the specified hotbar slot (0–8), fires a client KeyMapping
      * action by name, then restores the original slot — all on the client side via a
      * custom S2C packet. Responds immediately after sending the packet.
+     * {@code player} may also be a list or {@code "@a"}.
      *
-     * JSON: {"cast": "playerName", "slot": 3, "action": "key.use"}
+     * JSON: {"type": "cast", "player": "playerName", "slot": 3, "action": "key.use"}
+     *   or legacy {"cast": "playerName", "slot": 3, "action": "key.use"}
      */
     private static void handleCast(
-        Map<String, String> json,
+        Map<String, Object> args,
         MinecraftServer server,
-        Consumer<String> respond
+        Consumer<Map<String, Object>> respond
     ) {
-        String playerName = json.get("cast");
-        String slotStr = json.get("slot");
-        String action = json.get("action");
+        Object slotArg = args.get("slot");
+        String action = string(args, "action");
 
-        if (slotStr == null) {
+        if (slotArg == null) {
             respondError(respond, "cast", "Missing 'slot' field");
             return;
         }
@@ -308,40 +838,353 @@ public final class MessageDispatcher {
             respondError(respond, "cast", "Missing 'action' field");
             return;
         }
-        int slot;
-        try {
-            slot = Integer.parseInt(slotStr);
-        } catch (NumberFormatException e) {
-            respondError(respond, "cast", "Invalid slot: " + slotStr);
+        Integer slotNum = integer(slotArg);
+        if (slotNum == null) {
+            respondError(respond, "cast", "Invalid slot: " + slotArg);
             return;
         }
+        int slot = slotNum;
         if (slot < 0 || slot > 8) {
             respondError(respond, "cast", "Slot must be 0–8, got: " + slot);
             return;
         }
 
-        server.execute(() -> {
-            ServerPlayer player = server.getPlayerList().getPlayerByName(playerName);
-            if (player == null) {
-                respondError(respond, "cast", "Player not found: " + playerName);
-                return;
+        Object target = args.get("player");
+        if (isBulk(target)) {
+            List<Object> notFound = new ArrayList<>();
+            List<Object> players = new ArrayList<>();
+            CastPacket packet = new CastPacket(slot, action);
+            for (ServerPlayer player : select(target, PlayerIndex.all(), PlayerIndex::find, notFound)) {
+                PacketDistributor.sendToPlayer(player, packet);
+                players.add(entry("player", player.getName().getString()));
             }
-
-            PacketDistributor.sendToPlayer(player, new CastPacket(slot, action));
             respondSuccess(
                 respond, "cast",
-                "player", playerName,
                 "slot", String.valueOf(slot),
-                "action", action
+                "action", action,
+                "players", players,
+                "notFound", notFound
             );
-            LOGGER.info("cast: player={} slot={} action={}", playerName, slot, action);
+            return;
+        }
+
+        String playerName = string(args, "player");
+        ServerPlayer player = PlayerIndex.find(playerName);
+        if (player == null) {
+            respondError(respond, "cast", "Player not found: " + playerName);
+            return;
+        }
+
+        PacketDistributor.sendToPlayer(player, new CastPacket(slot, action));
+        respondSuccess(
+            respond, "cast",
+            "player", playerName,
+            "slot", String.valueOf(slot),
+            "action", action
+        );
+        LOGGER.info("cast: player={} slot={} action={}", playerName, slot, action);
+    }
+
+    // ── Player targets ──────────────────────────────────────────────────
+
+    /** Selector for every online player. */
+    private static final String ALL_PLAYERS = "@a";
+
+    /** A {@code player} argument naming several players: a list of names/UUIDs, or {@code "@a"}. */
+    private static boolean isBulk(Object target) {
+        return target instanceof List || ALL_PLAYERS.equals(target);
+    }
+
+    /**
+     * The players a bulk {@code player} argument names, each once, in request order
+     * ({@code "@a"}: all of {@code online}). Names or UUIDs with no online player
+     * are added to {@code notFound}.
+     */
+    private static <P> List<P> select(
+        Object target,
+        Collection<P> online,
+        Function<String, P> lookup,
+        List<Object> notFound
+    ) {
+        if (ALL_PLAYERS.equals(target)) return new ArrayList<>(online);
+        Set<P> players = new LinkedHashSet<>();
+        for (Object name : (List<?>) target) {
+            if (ALL_PLAYERS.equals(name)) {
+                players.addAll(online);
+                continue;
+            }
+            P player = name instanceof String s ? lookup.apply(s) : null;
+            if (player != null) players.add(player);
+            else notFound.add(name);
+        }
+        return new ArrayList<>(players);
+    }
+
+    /**
+     * Cancel this client's queued request with the given {@code id}.
+     *
+     * JSON: {"type": "cancel", "target": 7}
+     */
+    private static void handleCancel(
+        ClientSession session,
+        Map<String, Object> args,
+        Consumer<Map<String, Object>> respond
+    ) {
+        Object id = args.get("target");
+        respondSuccess(respond, "cancel", "target", id, "cancelled", session.cancel(id));
+    }
+
+    /**
+     * Receive events on {@code topics} (event names, or "*"), optionally only those
+     * about {@code players}. A connection that never subscribed receives everything.
+     *
+     * JSON: {"type": "subscribe", "topics": ["player_kill"], "players": ["Steve"]}
+     */
+    private static void handleSubscribe(
+        ClientSession session,
+        Map<String, Object> args,
+        Consumer<Map<String, Object>> respond
+    ) {
+        if (session.events == null) {
+            respondError(respond, "subscribe", "Subscriptions need a WebSocket connection");
+            return;
+        }
+        List<String> topics = strings(args.get("topics"));
+        if (topics == null || topics.isEmpty()) {
+            respondError(respond, "subscribe", "Invalid topics: " + args.get("topics"));
+            return;
+        }
+        Object playersArg = args.get("players");
+        List<String> players = playersArg == null ? null : strings(playersArg);
+        if (playersArg != null && players == null) {
+            respondError(respond, "subscribe", "Invalid players: " + playersArg);
+            return;
+        }
+        session.events.subscribe(topics, players);
+        respondSuccess(respond, "subscribe", "topics", session.events.topics());
+    }
+
+    /**
+     * Stop receiving events on {@code topics}, or on every topic if none are given.
+     *
+     * JSON: {"type": "unsubscribe", "topics": ["player_kill"]}
+     */
+    private static void handleUnsubscribe(
+        ClientSession session,
+        Map<String, Object> args,
+        Consumer<Map<String, Object>> respond
+    ) {
+        if (session.events == null) {
+            respondError(respond, "unsubscribe", "Subscriptions need a WebSocket connection");
+            return;
+        }
+        Object topicsArg = args.get("topics");
+        List<String> topics = topicsArg == null ? null : strings(topicsArg);
+        if (topicsArg != null && topics == null) {
+            respondError(respond, "unsubscribe", "Invalid topics: " + topicsArg);
+            return;
+        }
+        session.events.unsubscribe(topics);
+        respondSuccess(respond, "unsubscribe", "topics", session.events.topics());
+    }
+
+    /**
+     * Replay the events this connection subscribes to that were broadcast after
+     * sequence number {@code after} and before it connected, then answer. Reports a
+     * {@code gap} when some of them are no longer held.
+     *
+     * JSON: {"type": "resume", "after": 1200}
+     */
+    private static void handleResume(
+        ClientSession session,
+        Map<String, Object> args,
+        Consumer<Map<String, Object>> respond
+    ) {
+        if (session.events == null) {
+            respondError(respond, "resume", "Resume needs a WebSocket connection");
+            return;
+        }
+        Long after = integral(args.get("after"));
+        if (after == null || after < 0) {
+            respondError(respond, "resume", "Invalid after: " + args.get("after"));
+            return;
+        }
+        WebSocketServer.Connection conn = session.events.connection;
+        // Waits on the client's queue: never on a connection or event-loop thread
+        conn.server.background(() -> {
+            WebSocketServer.Resume r = conn.server.resume(conn, after);
+            if (r == null) {
+                // The server restarted, or the client is confused: it must resync from scratch
+                respondError(respond, "resume", "Sequence ahead of server", "latest", conn.server.latestSeq());
+            } else if (r.gap()) {
+                respondSuccess(respond, "resume",
+                    "replayed", r.replayed(), "latest", r.latest(),
+                    "gap", true, "missedFrom", after + 1, "missedTo", r.oldest() - 1);
+            } else {
+                respondSuccess(respond, "resume", "replayed", r.replayed(), "latest", r.latest());
+            }
+        });
+    }
+
+    /**
+     * Stream journaled events back, oldest first: by sequence number
+     * ({@code fromSeq}..{@code toSeq}, inclusive) and/or time ({@code since}..{@code until},
+     * epoch milliseconds), optionally only {@code topics}. Answers after the events
+     * with how many were sent and, if {@code limit} cut the range short, the
+     * {@code nextSeq} to ask from.
+     *
+     * JSON: {"type": "history", "fromSeq": 1, "toSeq": 5000, "topics": ["player_death"], "limit": 500}
+     */
+    private static void handleHistory(
+        ClientSession session,
+        Map<String, Object> args,
+        Consumer<Map<String, Object>> respond
+    ) {
+        if (session.events == null) {
+            respondError(respond, "history", "History needs a WebSocket connection");
+            return;
+        }
+        WebSocketServer.Connection conn = session.events.connection;
+        if (conn.server.journal() == null) {
+            respondError(respond, "history", "Event journal is disabled");
+            return;
+        }
+        Long fromSeq = integral(args, "fromSeq", 1);
+        Long toSeq = integral(args, "toSeq", Long.MAX_VALUE);
+        Long since = integral(args, "since", Long.MIN_VALUE);
+        Long until = integral(args, "until", Long.MAX_VALUE);
+        if (fromSeq == null || toSeq == null || since == null || until == null) {
+            respondError(respond, "history", "Invalid fromSeq/toSeq/since/until");
+            return;
+        }
+        Integer limit = args.containsKey("limit") ? integer(args.get("limit")) : Integer.valueOf(DEFAULT_HISTORY_LIMIT);
+        if (limit == null || limit < 1 || limit > MAX_HISTORY_LIMIT) {
+            respondError(respond, "history", "Invalid limit (1-" + MAX_HISTORY_LIMIT + "): " + args.get("limit"));
+            return;
+        }
+        Object topicsArg = args.get("topics");
+        List<String> topics = topicsArg == null ? null : strings(topicsArg);
+        if (topicsArg != null && topics == null) {
+            respondError(respond, "history", "Invalid topics: " + topicsArg);
+            return;
+        }
+        Set<String> topicSet = topics == null ? null : Set.copyOf(topics);
+        // Reads disk and waits on the client's queue: never on a connection or event-loop thread
+        conn.server.background(() -> {
+            try {
+                WebSocketServer.History h = conn.server.history(conn, fromSeq, toSeq, since, until, topicSet, limit);
+                if (h.nextSeq() > 0) {
+                    respondSuccess(respond, "history", "sent", h.sent(), "nextSeq", h.nextSeq());
+                } else {
+                    respondSuccess(respond, "history", "sent", h.sent());
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("History query failed", e);
+                respondError(respond, "history", "Journal read failed");
+            }
         });
     }
 
+    /**
+     * Server and connection counters. Reads only thread-safe counters, so it runs
+     * on the connection thread and never waits for a tick.
+     *
+     * JSON: {"type": "stats"}
+     */
+    private static void handleStats(
+        Map<String, Object> args,
+        MinecraftServer server,
+        Consumer<Map<String, Object>> respond
+    ) {
+        WebSocketServer ws = MinaretMod.getWebSocketServer();
+        respondSuccess(
+            respond, "stats",
+            "clients", ws != null ? ws.getConnectionStats().size() : 0,
+            "droppedFrames", ws != null ? ws.getDroppedFrames() : 0L,
+            "rejectedConnections", ws != null ? ws.getRejectedConnections() : 0L,
+            "connections", connections(ws),
+            "pendingRequests", SCHEDULER.backlog(),
+            "tickNanos", SCHEDULER.lastTickNanos(),
+            "avgTickNanos", SCHEDULER.averageTickNanos(),
+            "tickTasks", SCHEDULER.lastTickTasks(),
+            "overBudgetTicks", SCHEDULER.overBudgetTicks(),
+            "commandCacheHits", commands.hits(),
+            "commandCacheMisses", commands.misses(),
+            "pendingEvents", EventBroadcaster.pendingEvents(),
+            "droppedEvents", EventBroadcaster.droppedEvents()
+        );
+    }
+
+    private static List<Object> connections(WebSocketServer ws) {
+        List<Object> list = new ArrayList<>();
+        if (ws == null) return list;
+        for (var c : ws.getConnectionStats()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("remote", c.remote());
+            m.put("requests", c.requests());
+            m.put("rateLimited", c.rateLimited());
+            m.put("queuedFrames", c.queuedFrames());
+            list.add(m);
+        }
+        return list;
+    }
+
+    // ── Argument helpers ────────────────────────────────────────────────
+
+    /** {@code args.get(key)} as an integral number, {@code fallback} if absent, or null if not integral. */
+    private static Long integral(Map<String, Object> args, String key, long fallback) {
+        Object value = args.get(key);
+        return value == null ? Long.valueOf(fallback) : integral(value);
+    }
+
+    /** A scalar argument as text (numbers and booleans included), or null if absent. */
+    private static String string(Map<String, Object> args, String key) {
+        Object value = args.get(key);
+        return value == null || value instanceof Map || value instanceof List ? null : value.toString();
+    }
+
+    /** A string, or a list of only strings, as a list; null if it is neither. */
+    private static List<String> strings(Object value) {
+        if (value instanceof String s) return List.of(s);
+        if (!(value instanceof List<?> list)) return null;
+        List<String> strings = new ArrayList<>(list.size());
+        for (Object o : list) {
+            if (!(o instanceof String s)) return null;
+            strings.add(s);
+        }
+        return strings;
+    }
+
+    /**
+     * An integral number, or a string holding one (older clients send {@code "3"}),
+     * as an int; null if it is neither or out of range.
+     */
+    private static Integer integer(Object value) {
+        if (value instanceof Number n) {
+            double d = n.doubleValue();
+            return d == Math.rint(d) && d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE ? (int) d : null;
+        }
+        if (value instanceof String s) {
+            try {
+                return Integer.parseInt(s.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     // ── Response helpers ────────────────────────────────────────────────
 
+    /** A map of the given key-value pairs, in order. */
+    private static Map<String, Object> entry(Object... kv) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < kv.length; i += 2) m.put((String) kv[i], kv[i + 1]);
+        return m;
+    }
+
     private static void respondSuccess(
-        Consumer<String> respond,
+        Consumer<Map<String, Object>> respond,
         String type,
         Object... extra
     ) {
@@ -349,7 +1192,7 @@ public final class MessageDispatcher {
     }
 
     private static void respondError(
-        Consumer<String> respond,
+        Consumer<Map<String, Object>> respond,
         String type,
         String error,
         Object... extra
@@ -358,7 +1201,7 @@ public final class MessageDispatcher {
     }
 
     private static void respond(
-        Consumer<String> respond,
+        Consumer<Map<String, Object>> respond,
         String status,
         String type,
         String error,
@@ -371,6 +1214,6 @@ public final class MessageDispatcher {
         for (int i = 0; i + 1 < extra.length; i += 2) {
             r.put((String) extra[i], extra[i + 1]);
         }
-        respond.accept(SimpleJson.generate(r));
+        respond.accept(r);
     }
 }
@@ -9,7 +9,7 @@ import net.minecraft.commands.SharedSuggestionProvider;
 import net.minecraft.network.chat.Component;
 
 /**
- * All /minaret subcommands: exec, addkey, addcommand, delkey, listkeys, listactions.
+ * All /minaret subcommands: exec, clients, addkey, addcommand, delkey, listkeys, listactions.
  */
 public final class MinaretCommands {
 
@@ -24,6 +24,7 @@ public final class MinaretCommands {
             Commands.literal("minaret")
                 .requires(source -> Compat.hasPermission(source, OP_LEVEL))
                 .then(execCommand())
+                .then(clientsCommand())
                 .then(attrsCommand())
                 .then(addKeyCommand())
                 .then(addCommandCommand())
@@ -57,6 +58,10 @@ public final class MinaretCommands {
         );
     }
 
+    private static LiteralArgumentBuilder<CommandSourceStack> clientsCommand() {
+        return Commands.literal("clients").executes(ctx -> clients(ctx.getSource()));
+    }
+
     private static LiteralArgumentBuilder<CommandSourceStack> addKeyCommand() {
         return Commands.literal("addkey").then(
             Commands.argument("args", StringArgumentType.greedyString())
@@ -174,12 +179,48 @@ public final class MinaretCommands {
     // ── Handlers ────────────────────────────────────────────────────────
 
     private static int exec(CommandSourceStack source, String json) {
+        // Snapshots are only kept up while WebSocket clients are connected
+        PlayerSnapshot.refresh(source.getServer());
         MessageDispatcher.dispatch(json, source.getServer(), response ->
             source.sendSuccess(() -> Component.literal(response), false)
         );
         return 1;
     }
 
+    private static int clients(CommandSourceStack source) {
+        WebSocketServer ws = MinaretMod.getWebSocketServer();
+        if (ws == null) {
+            source.sendFailure(Component.literal("WebSocket server is not running"));
+            return 0;
+        }
+        var stats = ws.getConnectionStats();
+        StringBuilder sb = new StringBuilder("WebSocket clients: ")
+            .append(stats.size())
+            .append(" (dropped frames: ")
+            .append(ws.getDroppedFrames())
+            .append(", rejected connections: ")
+            .append(ws.getRejectedConnections())
+            .append(")");
+        for (var c : stats) {
+            sb
+                .append("\n  ")
+                .append(c.remote())
+                .append(c.binary() ? " [bin]" : "")
+                .append(" rtt=")
+                .append(c.rttMillis() < 0 ? "?" : String.format("%.1fms", c.rttMillis()))
+                .append(" queued=")
+                .append(c.queuedFrames())
+                .append(" dropped=")
+                .append(c.droppedFrames())
+                .append(" requests=")
+                .append(c.requests())
+                .append(" limited=")
+                .append(c.rateLimited());
+        }
+        source.sendSuccess(() -> Component.literal(sb.toString()), false);
+        return 1;
+    }
+
     private static int addChord(
         CommandSourceStack source,
         String sequence,
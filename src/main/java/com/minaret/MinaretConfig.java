@@ -1,5 +1,6 @@
 package com.minaret;
 
+import java.util.List;
 import net.neoforged.neoforge.common.ModConfigSpec;
 
 public class MinaretConfig {
@@ -8,6 +9,9 @@ public class MinaretConfig {
     private static final String DEFAULT_USERNAME = "";
     private static final String DEFAULT_PASSWORD = "";
 
+    public static final String TRANSPORT_BLOCKING = "blocking";
+    public static final String TRANSPORT_NIO = "nio";
+
     private static final ModConfigSpec.Builder BUILDER =
         new ModConfigSpec.Builder();
 
@@ -28,5 +32,217 @@ public class MinaretConfig {
             DEFAULT_PASSWORD
         );
 
+    public static final ModConfigSpec.ConfigValue<String> TRANSPORT =
+        BUILDER.comment(
+            "Connection transport: 'blocking' (one virtual thread per client) " +
+            "or 'nio' (shared selector event loops, lower per-client memory)"
+        ).defineInList(
+            "transport",
+            TRANSPORT_BLOCKING,
+            List.of(TRANSPORT_BLOCKING, TRANSPORT_NIO)
+        );
+
+    public static final ModConfigSpec.IntValue NIO_THREADS =
+        BUILDER.comment("Number of event-loop threads for the 'nio' transport").defineInRange(
+            "nio_threads",
+            2,
+            1,
+            16
+        );
+
+    public static final ModConfigSpec.IntValue ACCEPT_BACKLOG =
+        BUILDER.comment("Pending TCP connections the OS queues before accept").defineInRange(
+            "accept_backlog",
+            50,
+            1,
+            65535
+        );
+
+    public static final ModConfigSpec.IntValue MAX_CONNECTIONS =
+        BUILDER.comment("Max simultaneous clients, including ones still handshaking (0 = unlimited)").defineInRange(
+            "max_connections",
+            0,
+            0,
+            100_000
+        );
+
+    public static final ModConfigSpec.IntValue MAX_CONNECTIONS_PER_ADDRESS =
+        BUILDER.comment("Max simultaneous clients from one IP address (0 = unlimited)").defineInRange(
+            "max_connections_per_address",
+            0,
+            0,
+            100_000
+        );
+
+    public static final ModConfigSpec.IntValue HANDSHAKE_TIMEOUT_MS =
+        BUILDER.comment("Milliseconds a new client has to complete the HTTP upgrade").defineInRange(
+            "handshake_timeout_ms",
+            5000,
+            500,
+            60_000
+        );
+
+    public static final ModConfigSpec.IntValue RETRY_AFTER_SECONDS =
+        BUILDER.comment(
+            "Base Retry-After for rejected clients; each reply adds random jitter of up to the same amount"
+        ).defineInRange("retry_after_seconds", 5, 1, 3600);
+
+    /** What to do when a client's outbound queue is full. */
+    public enum OverflowPolicy {
+        /** Discard the oldest queued frame to make room. */
+        DROP_OLDEST,
+        /** Discard the frame being sent. */
+        DROP_NEWEST,
+        /** Close the slow client's connection. */
+        DISCONNECT,
+    }
+
+    public static final ModConfigSpec.IntValue OUTBOUND_QUEUE_FRAMES =
+        BUILDER.comment("Max frames queued per client before the overflow policy applies").defineInRange(
+            "outbound_queue_frames",
+            1024,
+            16,
+            65536
+        );
+
+    public static final ModConfigSpec.EnumValue<OverflowPolicy> OUTBOUND_OVERFLOW =
+        BUILDER.comment(
+            "Overflow policy for a full outbound queue: DROP_OLDEST, DROP_NEWEST or DISCONNECT"
+        ).defineEnum("outbound_overflow", OverflowPolicy.DROP_OLDEST);
+
+    public static final ModConfigSpec.BooleanValue TCP_NODELAY =
+        BUILDER.comment(
+            "Disable Nagle's algorithm on client sockets (writes are already coalesced per drain)"
+        ).define("tcp_nodelay", true);
+
+    public static final ModConfigSpec.IntValue SEND_BUFFER_BYTES =
+        BUILDER.comment("Socket send buffer size for client connections (0 = OS default)").defineInRange(
+            "send_buffer_bytes",
+            0,
+            0,
+            16_777_216
+        );
+
+    public static final ModConfigSpec.IntValue HEARTBEAT_INTERVAL_SECONDS =
+        BUILDER.comment("Seconds between server pings to each client (0 = no heartbeat)").defineInRange(
+            "heartbeat_interval_seconds",
+            30,
+            0,
+            3600
+        );
+
+    public static final ModConfigSpec.IntValue HEARTBEAT_MAX_MISSED =
+        BUILDER.comment("Close a client after this many consecutive pings go unanswered").defineInRange(
+            "heartbeat_max_missed",
+            2,
+            1,
+            100
+        );
+
+    public static final ModConfigSpec.IntValue MAX_MESSAGE_BYTES =
+        BUILDER.comment(
+            "Largest incoming message (after reassembling fragments / inflating) before the client is closed"
+        ).defineInRange("max_message_bytes", 1_048_576, 1024, 67_108_864);
+
+    public static final ModConfigSpec.IntValue MAX_BATCH_REQUESTS =
+        BUILDER.comment(
+            "Most requests in one batch (JSON array or {\"batch\":[...]}); a batch runs within a single tick"
+        ).defineInRange("max_batch_requests", 64, 1, 1024);
+
+    public static final ModConfigSpec.IntValue TICK_BUDGET_NANOS =
+        BUILDER.comment(
+            "Server-thread time per tick for WebSocket requests (ns); the rest waits for the next tick"
+        ).defineInRange("tick_budget_nanos", 5_000_000, 100_000, 50_000_000);
+
+    public static final ModConfigSpec.ConfigValue<List<? extends String>> RATE_LIMITS =
+        BUILDER.comment(
+            "Per-client request rate limits, 'type=perSecond/burst'; '*' covers every type without its own entry."
+                + " Empty = unlimited; e.g. [\"command=20/40\", \"message=5/10\", \"*=100/200\"]"
+        ).defineListAllowEmpty(
+            "rate_limits",
+            List.of(),
+            () -> "*=100/200",
+            o -> o instanceof String
+        );
+
+    public static final ModConfigSpec.BooleanValue RATE_LIMIT_PER_USER =
+        BUILDER.comment(
+            "With auth on, also apply rate_limits across all connections of the authenticated user"
+        ).define("rate_limit_per_user", false);
+
+    public static final ModConfigSpec.IntValue COMMAND_CACHE_SIZE =
+        BUILDER.comment(
+            "Parsed WebSocket commands kept for reuse, least recently used dropped first (0 = off)"
+        ).defineInRange("command_cache_size", 512, 0, 65536);
+
+    public static final ModConfigSpec.BooleanValue COMMAND_PARSE_OFF_THREAD =
+        BUILDER.comment(
+            "Parse WebSocket commands on the connection thread so only execution takes tick time"
+        ).define("command_parse_off_thread", false);
+
+    public static final ModConfigSpec.IntValue SNAPSHOT_INTERVAL_TICKS =
+        BUILDER.comment(
+            "Ticks between player snapshots; read requests see state at most this many ticks old"
+        ).defineInRange("snapshot_interval_ticks", 1, 1, 200);
+
+    public static final ModConfigSpec.IntValue EVENT_QUEUE_SIZE =
+        BUILDER.comment(
+            "Game events queued for the event thread (rounded up to a power of two); beyond it new events are dropped"
+        ).defineInRange("event_queue_size", 8192, 64, 1 << 20);
+
+    public static final ModConfigSpec.IntValue REPLAY_BUFFER_EVENTS =
+        BUILDER.comment(
+            "Recent events kept for clients resuming after a reconnect (0 = none; events are still numbered)."
+                + " While non-zero every event is built, subscribed or not"
+        ).defineInRange("replay_buffer_events", 0, 0, 1 << 20);
+
+    public static final ModConfigSpec.BooleanValue JOURNAL_ENABLED =
+        BUILDER.comment(
+            "Keep every broadcast event in a journal under the world folder (minaret/events) for history queries"
+        ).define("journal_enabled", false);
+
+    public static final ModConfigSpec.IntValue JOURNAL_SEGMENT_MB =
+        BUILDER.comment("Size of each journal segment file (MB)").defineInRange("journal_segment_mb", 16, 1, 1024);
+
+    public static final ModConfigSpec.IntValue JOURNAL_RETENTION_MB =
+        BUILDER.comment(
+            "Total journal size (MB) beyond which the oldest segments are deleted"
+        ).defineInRange("journal_retention_mb", 1024, 1, 1 << 20);
+
+    public static final ModConfigSpec.IntValue JOURNAL_RETENTION_HOURS =
+        BUILDER.comment(
+            "Delete journal segments last written more than this many hours ago (0 = no age limit)"
+        ).defineInRange("journal_retention_hours", 0, 0, 24 * 365 * 10);
+
+    public static final ModConfigSpec.ConfigValue<List<? extends String>> AGGREGATE_STREAMS =
+        BUILDER.comment(
+            "Aggregated event streams, 'topic=windowTicks/threshold' (threshold 0 = flush on time only); unlisted streams are off"
+        ).defineListAllowEmpty(
+            "aggregate_streams",
+            List.of("player_heal=1200/10"),
+            () -> "player_heal=1200/10",
+            o -> o instanceof String
+        );
+
+    public static final ModConfigSpec.BooleanValue DEFLATE_ENABLED =
+        BUILDER.comment("Negotiate permessage-deflate (RFC 7692) with clients that offer it").define(
+            "deflate_enabled",
+            false
+        );
+
+    public static final ModConfigSpec.IntValue DEFLATE_THRESHOLD =
+        BUILDER.comment("Messages smaller than this many bytes are sent uncompressed").defineInRange(
+            "deflate_threshold",
+            256,
+            0,
+            65535
+        );
+
+    public static final ModConfigSpec.BooleanValue DEFLATE_CONTEXT_TAKEOVER =
+        BUILDER.comment(
+            "Keep the compression window across messages (better ratio, 32 KB+ per client); " +
+            "false sends server_no_context_takeover"
+        ).define("deflate_context_takeover", true);
+
     public static final ModConfigSpec CONFIG_SPEC = BUILDER.build();
 }
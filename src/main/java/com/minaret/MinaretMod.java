@@ -49,11 +49,23 @@ public class MinaretMod {
         NeoForge.EVENT_BUS.addListener(
             (net.neoforged.neoforge.event.server.ServerStoppingEvent e) -> onServerStopping(e)
         );
+        NeoForge.EVENT_BUS.addListener(
+            (net.neoforged.neoforge.event.tick.ServerTickEvent.Pre e) -> MessageDispatcher.onServerTick()
+        );
+        NeoForge.EVENT_BUS.addListener(
+            (net.neoforged.neoforge.event.tick.ServerTickEvent.Post e) -> PlayerSnapshot.onServerTick(e.getServer())
+        );
+        NeoForge.EVENT_BUS.addListener(
+            (net.neoforged.neoforge.event.tick.ServerTickEvent.Post e) -> EventBroadcaster.onServerTick(e.getServer())
+        );
         NeoForge.EVENT_BUS.addListener(EventBroadcaster::onPlayerJoin);
         NeoForge.EVENT_BUS.addListener(EventBroadcaster::onPlayerLeave);
+        NeoForge.EVENT_BUS.addListener(PlayerIndex::onPlayerRespawn);
         NeoForge.EVENT_BUS.addListener(EventBroadcaster::onLivingDeath);
         NeoForge.EVENT_BUS.addListener(EventBroadcaster::onItemUseFinish);
         NeoForge.EVENT_BUS.addListener(EventBroadcaster::onLivingHeal);
+        NeoForge.EVENT_BUS.addListener(EventBroadcaster::onLivingDamage);
+        NeoForge.EVENT_BUS.addListener(EventBroadcaster::onXpChange);
 
         if (Compat.isClient()) {
             com.minaret.client.ChordKeyHandler.init(modEventBus);
@@ -66,6 +78,8 @@ public class MinaretMod {
 
     private void onServerStarting(net.neoforged.neoforge.event.server.ServerStartingEvent event) {
         currentServer = event.getServer();
+        MessageDispatcher.install(NeoForge.EVENT_BUS.post(new RegisterRequestHandlersEvent()));
+        EventBroadcaster.start();
         try {
             HostPort hp = HostPort.parse(MinaretConfig.WEBSOCKET_URL.get());
             webSocketServer = new WebSocketServer(
@@ -84,6 +98,9 @@ public class MinaretMod {
 
     private void onServerStopping(net.neoforged.neoforge.event.server.ServerStoppingEvent event) {
         currentServer = null;
+        PlayerSnapshot.clear();
+        PlayerIndex.clear();
+        EventBroadcaster.stop();
         if (webSocketServer != null) {
             try {
                 webSocketServer.stop();
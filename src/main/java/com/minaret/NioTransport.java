@@ -0,0 +1,408 @@
+package com.minaret;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Selector-based transport for WebSocketServer. A fixed set of event-loop threads
+ * drive accept, handshake, frame parsing and writes for every connection.
+ *
+ * Loop 0 also owns the listening channel and hands accepted sockets to the loops
+ * round-robin. Socket reads go through one shared chunk per loop and are fed straight
+ * to the connection's {@link FrameDecoder}, so an idle client costs a few hundred bytes
+ * instead of a thread and a read buffer.
+ */
+final class NioTransport {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int READ_CHUNK = 16_384;
+    /** Upper bound on the HTTP upgrade request before the client is dropped. */
+    private static final int MAX_HEADER_BYTES = 8192;
+    private static final long JOIN_TIMEOUT_MS = 5_000;
+    private static final byte[] EMPTY = new byte[0];
+    /** Most frames handed to one gathering write. */
+    private static final int MAX_GATHER = 64;
+
+    private final WebSocketServer server;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    /** Round-robin cursor; only touched by loop 0 while accepting. */
+    private int nextLoop = 0;
+    private volatile boolean running = false;
+
+    NioTransport(
+        WebSocketServer server,
+        InetAddress bindAddr,
+        int port,
+        int backlog,
+        int threads
+    ) throws IOException {
+        this.server = server;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddr, port), backlog);
+        serverChannel.configureBlocking(false);
+
+        this.loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) loops[i] = new EventLoop();
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    void start() {
+        running = true;
+        for (int i = 0; i < loops.length; i++) {
+            loops[i].thread = Thread.ofPlatform()
+                .name("minaret-nio-" + i)
+                .daemon()
+                .start(loops[i]);
+        }
+    }
+
+    void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing server channel", e);
+        }
+        for (EventLoop loop : loops) loop.selector.wakeup();
+        for (EventLoop loop : loops) {
+            if (loop.thread == null) continue;
+            try {
+                loop.thread.join(JOIN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // ── Event loop ──────────────────────────────────────────────────────
+
+    private final class EventLoop implements Runnable {
+
+        final Selector selector;
+        /** Work handed over from other threads (channel registrations, flush requests). */
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        /** Shared socket read target, fed straight to the owning connection's decoder. */
+        final ByteBuffer readChunk = ByteBuffer.allocate(READ_CHUNK);
+        Thread thread;
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException | ClosedSelectorException e) {
+                    if (running) LOGGER.error("Selector failed", e);
+                    break;
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    // A failing task must not take the loop, and every connection on it, down
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        LOGGER.error("Event loop task failed", e);
+                    }
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    NioConnection conn = (NioConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) conn.onReadable(readChunk);
+                        if (key.isValid() && key.isWritable()) conn.onWritable();
+                    } catch (Exception e) {
+                        LOGGER.debug("WebSocket connection closed: {}", e.getMessage());
+                        conn.close();
+                    }
+                }
+            }
+            shutdown();
+        }
+
+        private void register(SocketChannel channel, SocketAddress remote, InetAddress address) {
+            NioConnection conn = new NioConnection(channel, remote, address, this);
+            try {
+                conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Failed to register connection {}: {}", remote, e.toString());
+                conn.close();
+                return;
+            }
+            conn.deadline = server.timers.schedule(conn::handshakeExpired, server.handshakeTimeoutMs);
+        }
+
+        /** Close every channel still registered here, then the selector itself. */
+        private void shutdown() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioConnection conn) conn.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.debug("Error closing selector", e);
+            }
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) return;
+                channel.configureBlocking(false);
+                server.tuneSocket(channel.socket());
+            } catch (IOException e) {
+                if (running) LOGGER.error("Error accepting connection", e);
+                return;
+            }
+
+            SocketAddress remote;
+            try {
+                remote = channel.getRemoteAddress();
+            } catch (IOException e) {
+                try { channel.close(); } catch (IOException ignored) {}
+                continue;
+            }
+            LOGGER.debug("New connection from: {}", remote);
+
+            InetAddress address = ((InetSocketAddress) remote).getAddress();
+            String rejected = server.admit(address);
+            if (rejected != null) {
+                LOGGER.debug("Rejected connection from {}: {}", address, rejected.lines().findFirst().orElse(""));
+                // Best effort: a few hundred bytes always fit a fresh socket's send buffer
+                try (channel) {
+                    channel.write(ByteBuffer.wrap(rejected.getBytes(StandardCharsets.UTF_8)));
+                } catch (IOException ignored) {}
+                continue;
+            }
+
+            EventLoop loop = loops[nextLoop];
+            nextLoop = (nextLoop + 1) % loops.length;
+            loop.execute(() -> loop.register(channel, remote, address));
+        }
+    }
+
+    // ── Connection ──────────────────────────────────────────────────────
+
+    /**
+     * One non-blocking channel. Reads, handshake and writes all run on the owning
+     * loop; other threads only queue frames and schedule a flush, so a stalled
+     * client never costs the sender more than an enqueue.
+     */
+    private final class NioConnection extends WebSocketServer.Connection {
+
+        private final SocketChannel channel;
+        private final SocketAddress remote;
+        private final EventLoop loop;
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        SelectionKey key;
+
+        /** HTTP upgrade request so far — {@code headerBuf[0, limit)}. Null once upgraded. */
+        private byte[] headerBuf = EMPTY;
+        private int limit = 0;
+        /** Read by the timer thread to decide whether the handshake deadline applies. */
+        private volatile boolean upgraded = false;
+        private TimerWheel.Timeout deadline;
+        /**
+         * Frames taken off the queue for a gathering write — {@code pending[head, tail)},
+         * the first possibly partly sent. Allocated on first write. Loop thread only.
+         */
+        private ByteBuffer[] pending;
+        private int head = 0;
+        private int tail = 0;
+        private long pendingBytes = 0;
+
+        NioConnection(SocketChannel channel, SocketAddress remote, InetAddress address, EventLoop loop) {
+            super(NioTransport.this.server, address);
+            this.channel = channel;
+            this.remote = remote;
+            this.loop = loop;
+        }
+
+        @Override
+        SocketAddress remoteAddress() {
+            return remote;
+        }
+
+        // ── Reading ──
+
+        void onReadable(ByteBuffer chunk) throws Exception {
+            chunk.clear();
+            int n = channel.read(chunk);
+            if (n < 0) {
+                close();
+                return;
+            }
+            if (n == 0) return;
+
+            boolean reading = upgraded ? consume(chunk.array(), 0, n) : handshake(chunk.array(), n);
+            if (!reading && key.isValid()) {
+                // Closing — stop reading, let the queued reply flush
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Accumulate the HTTP upgrade request and answer it once complete.
+         * Returns false if the connection is closing.
+         */
+        private boolean handshake(byte[] data, int n) throws Exception {
+            if (limit + n > MAX_HEADER_BYTES) {
+                LOGGER.warn("Handshake too large ({} bytes) — closing: {}", limit + n, remote);
+                close();
+                return false;
+            }
+            if (limit + n > headerBuf.length) {
+                headerBuf = Arrays.copyOf(headerBuf, Math.min(MAX_HEADER_BYTES, Math.max(limit + n, 512)));
+            }
+            System.arraycopy(data, 0, headerBuf, limit, n);
+            limit += n;
+
+            int end = WebSocketProtocol.findHeaderEnd(headerBuf, limit);
+            if (end < 0) return true;
+
+            Map<String, String> headers = WebSocketProtocol.parseHttpHeaders(headerBuf, end);
+            if (headers == null) {
+                close();
+                return false;
+            }
+
+            deadline.cancel();
+            WebSocketServer.Handshake hs = server.handshake(headers, remote);
+            if (!hs.upgraded()) closeWhenDrained = true;
+            enqueue(hs.response().getBytes(StandardCharsets.UTF_8), true);
+            if (!hs.upgraded()) return false;
+
+            // The 101 response is still queued, but prepareForWire leaves non-frame bytes alone
+            applyHandshake(hs);
+            upgraded = true;
+            server.register(this);
+            LOGGER.info("WebSocket connection established: {}", remote);
+
+            // Clients may pipeline their first frame right behind the headers
+            byte[] rest = headerBuf;
+            int restLen = limit - end;
+            headerBuf = null;
+            return restLen == 0 || consume(rest, end, restLen);
+        }
+
+        /** Timer thread: drop a client that has not finished its upgrade in time. */
+        private void handshakeExpired() {
+            if (upgraded) return;
+            LOGGER.debug("Handshake timed out: {}", remote);
+            close();
+        }
+
+        // ── Writing ──
+
+        @Override
+        void wakeWriter() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(() -> {
+                    flushScheduled.set(false);
+                    try {
+                        onWritable();
+                    } catch (RuntimeException e) {
+                        LOGGER.debug("WebSocket connection closed: {}", e.toString());
+                        close();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Write as much as the socket accepts, handing queued frames to the kernel
+         * in batches with one gathering write each. Loop thread only.
+         */
+        void onWritable() {
+            if (!active) return;
+            try {
+                while (true) {
+                    fillPending();
+                    if (head == tail) break;
+                    pendingBytes -= channel.write(pending, head, tail - head);
+                    while (head < tail && !pending[head].hasRemaining()) pending[head++] = null;
+                    if (head < tail) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.debug("WebSocket write failed: {}", e.getMessage());
+                close();
+                return;
+            }
+            if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+            if (closeWhenDrained) close();
+        }
+
+        /** Top up {@link #pending} from the outbound queue, up to one write batch. */
+        private void fillPending() {
+            if (pending == null) pending = new ByteBuffer[MAX_GATHER];
+            if (head > 0) {
+                System.arraycopy(pending, head, pending, 0, tail - head);
+                Arrays.fill(pending, tail - head, tail, null);
+                tail -= head;
+                head = 0;
+            }
+            while (tail < MAX_GATHER && pendingBytes < WebSocketServer.WRITE_BATCH_BYTES) {
+                byte[] next = outbound.pollFirst();
+                if (next == null) return;
+                byte[] wire = prepareForWire(next);
+                pending[tail++] = ByteBuffer.wrap(wire);
+                pendingBytes += wire.length;
+            }
+        }
+
+        @Override
+        void closeTransport() {
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Error closing WebSocket connection", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.minaret;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * permessage-deflate (RFC 7692) for one connection — negotiation, compression of
+ * outgoing text frames and inflation of incoming ones. java.util.zip only.
+ *
+ * Deflater always uses a 15-bit window, so offers that ask for a smaller
+ * server_max_window_bits are declined. Compression runs in the connection's writer,
+ * which keeps the sliding window in step with what the client actually receives.
+ * Methods are synchronized only so close() cannot free zlib state mid-call.
+ */
+final class PerMessageDeflate {
+
+    static final String EXTENSION = "permessage-deflate";
+    private static final int MAX_WINDOW_BITS = 15;
+    /** Empty stored block that SYNC_FLUSH appends and RFC 7692 strips (§7.2.1). */
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+    private static final int CHUNK = 4096;
+
+    private final boolean serverTakeover;
+    private final int threshold;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+    private byte[] scratch = new byte[CHUNK];
+    /** Set by {@link #close}; zlib state must not be touched after {@code end()}. */
+    private boolean closed;
+
+    private PerMessageDeflate(boolean serverTakeover, int threshold) {
+        this.serverTakeover = serverTakeover;
+        this.threshold = threshold;
+    }
+
+    // ── Negotiation ─────────────────────────────────────────────────────
+
+    /**
+     * Pick the first acceptable permessage-deflate offer from a
+     * Sec-WebSocket-Extensions header. Returns null if there is none.
+     *
+     * @param allowTakeover false forces server_no_context_takeover
+     * @param threshold     payloads shorter than this are sent uncompressed
+     */
+    static PerMessageDeflate negotiate(String header, boolean allowTakeover, int threshold) {
+        if (header == null) return null;
+        for (String offer : header.split(",")) {
+            String[] params = offer.split(";");
+            if (!EXTENSION.equalsIgnoreCase(params[0].trim())) continue;
+
+            boolean takeover = allowTakeover;
+            boolean acceptable = true;
+            for (int i = 1; i < params.length && acceptable; i++) {
+                String[] kv = params[i].trim().split("=", 2);
+                String value = kv.length == 2 ? kv[1].trim().replace("\"", "") : null;
+                switch (kv[0].trim().toLowerCase(Locale.ROOT)) {
+                    case "server_no_context_takeover" -> takeover = false;
+                    case "client_no_context_takeover" -> {} // harmless to keep our inflater window
+                    case "client_max_window_bits" -> {}     // any client window fits our 32 KB inflater
+                    case "server_max_window_bits" ->
+                        acceptable = value != null && value.equals(String.valueOf(MAX_WINDOW_BITS));
+                    default -> acceptable = false;
+                }
+            }
+            if (acceptable) return new PerMessageDeflate(takeover, threshold);
+        }
+        return null;
+    }
+
+    /** Value for the Sec-WebSocket-Extensions response header. */
+    String responseHeader() {
+        return serverTakeover ? EXTENSION : EXTENSION + "; server_no_context_takeover";
+    }
+
+    // ── Outgoing ────────────────────────────────────────────────────────
+
+    /**
+     * Compress a text message produced by {@link WebSocketProtocol#encodeMessage},
+     * re-fragmenting if it is still large. Anything else — control frames, raw
+     * HTTP bytes, payloads under the threshold — is returned unchanged.
+     */
+    synchronized byte[] compressFrame(byte[] frame) {
+        if (closed || !WebSocketProtocol.isUncompressedText(frame)) return frame;
+        byte[] payload = frame;
+        int payloadOff = 0;
+        if (WebSocketProtocol.isSingleFrame(frame)) {
+            payloadOff = WebSocketProtocol.headerLength(frame, 0);
+        } else {
+            payload = WebSocketProtocol.joinFragments(frame);
+        }
+        int payloadLen = payload.length - payloadOff;
+        if (payloadLen < threshold) return frame;
+
+        deflater.setInput(payload, payloadOff, payloadLen);
+        int len = 0;
+        while (true) {
+            if (len == scratch.length) scratch = Arrays.copyOf(scratch, len * 2);
+            int n = deflater.deflate(scratch, len, scratch.length - len, Deflater.SYNC_FLUSH);
+            len += n;
+            // SYNC_FLUSH is complete once it stops filling the whole buffer
+            if (len < scratch.length) break;
+        }
+        if (!serverTakeover) deflater.reset();
+
+        if (len >= TAIL.length) len -= TAIL.length;
+        return WebSocketProtocol.encodeMessage(WebSocketProtocol.OPCODE_TEXT, true, scratch, 0, len);
+    }
+
+    // ── Incoming ────────────────────────────────────────────────────────
+
+    /** Inflate {@code payload[0, length)}, refusing to grow past {@code maxSize}. */
+    synchronized byte[] inflate(byte[] payload, int length, int maxSize) throws IOException {
+        if (closed) throw new IOException("Connection closed");
+        byte[] input = Arrays.copyOf(payload, length + TAIL.length);
+        System.arraycopy(TAIL, 0, input, length, TAIL.length);
+        inflater.setInput(input);
+
+        byte[] out = new byte[(int) Math.min(maxSize, Math.max(CHUNK, length * 4L))];
+        int len = 0;
+        try {
+            while (true) {
+                if (len == out.length) {
+                    if (len >= maxSize) {
+                        // Exactly maxSize is allowed; only output still pending past it is too much
+                        if (inflater.finished() || inflater.inflate(new byte[1]) == 0) break;
+                        throw new IOException("Decompressed message exceeds " + maxSize + " bytes");
+                    }
+                    out = Arrays.copyOf(out, Math.min(maxSize, len * 2));
+                }
+                len += inflater.inflate(out, len, out.length - len);
+                // A full buffer may hide pending output; otherwise stop once input is consumed
+                if (len < out.length) break;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed payload: " + e.getMessage());
+        }
+        return len == out.length ? out : Arrays.copyOf(out, len);
+    }
+
+    /** Release native zlib state. */
+    synchronized void close() {
+        closed = true;
+        deflater.end();
+        inflater.end();
+    }
+}
@@ -0,0 +1,73 @@
+package com.minaret;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.server.level.ServerPlayer;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+
+/**
+ * Online players by name and UUID, kept up to date from the login/logout events
+ * so request handlers resolve players with one hash lookup. Server thread only.
+ *
+ * Respawning — after death or on leaving the End — replaces a player's
+ * {@link ServerPlayer} object, so the index follows the respawn event too.
+ */
+public final class PlayerIndex {
+
+    /** Join order, so {@code @a} lists players the same way every time. */
+    private static final Map<UUID, ServerPlayer> BY_UUID = new LinkedHashMap<>();
+    /** Lower-cased names; lookups ignore case like PlayerList's. */
+    private static final Map<String, ServerPlayer> BY_NAME = new HashMap<>();
+
+    private PlayerIndex() {}
+
+    static void add(ServerPlayer player) {
+        BY_UUID.put(player.getUUID(), player);
+        BY_NAME.put(key(player.getName().getString()), player);
+    }
+
+    static void remove(ServerPlayer player) {
+        BY_UUID.remove(player.getUUID());
+        BY_NAME.remove(key(player.getName().getString()), player);
+    }
+
+    /** The old entity is discarded on respawn; index the new one in its place (join order is kept). */
+    public static void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        if (event.getEntity() instanceof ServerPlayer player) add(player);
+    }
+
+    static void clear() {
+        BY_UUID.clear();
+        BY_NAME.clear();
+    }
+
+    /** Every online player, in join order. */
+    public static Collection<ServerPlayer> all() {
+        return Collections.unmodifiableCollection(BY_UUID.values());
+    }
+
+    /** The player with this name (any case) or UUID string, or null if not online. */
+    public static ServerPlayer find(String nameOrUuid) {
+        UUID uuid = uuid(nameOrUuid);
+        return uuid != null ? BY_UUID.get(uuid) : BY_NAME.get(key(nameOrUuid));
+    }
+
+    /** {@code s} as a UUID if it is one in the dashed form, else null. */
+    static UUID uuid(String s) {
+        if (s.length() != 36 || s.charAt(8) != '-') return null;
+        try {
+            return UUID.fromString(s);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,142 @@
+package com.minaret;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.effect.MobEffectInstance;
+
+/**
+ * Immutable view of the online players, captured on the server thread every
+ * {@code snapshot_interval_ticks} and published in one volatile write.
+ *
+ * Readers on any thread get a consistent picture of one tick without touching
+ * live entities — this is what {@link RequestHandler.Affinity#SNAPSHOT} handlers
+ * read. {@link #tick()} says how old the picture is.
+ */
+public final class PlayerSnapshot {
+
+    /** One active effect; {@code duration} is in ticks, -1 for infinite. */
+    public record Effect(String effect, int duration, int amplifier) {}
+
+    public record Player(
+        String name,
+        UUID uuid,
+        float health,
+        float maxHealth,
+        int food,
+        float saturation,
+        double x,
+        double y,
+        double z,
+        String dimension,
+        int selectedSlot,
+        List<Effect> effects
+    ) {}
+
+    private static final PlayerSnapshot EMPTY = new PlayerSnapshot(-1, List.of());
+    private static volatile PlayerSnapshot current = EMPTY;
+
+    private final long tick;
+    private final List<Player> players;
+    /** Lower-cased name to player; name lookups ignore case like PlayerList's. */
+    private final Map<String, Player> byName;
+    private final Map<UUID, Player> byUuid;
+
+    private PlayerSnapshot(long tick, List<Player> players) {
+        this.tick = tick;
+        this.players = Collections.unmodifiableList(players);
+        Map<String, Player> names = new HashMap<>();
+        Map<UUID, Player> uuids = new HashMap<>();
+        for (Player p : players) {
+            names.put(p.name().toLowerCase(Locale.ROOT), p);
+            uuids.put(p.uuid(), p);
+        }
+        this.byName = names;
+        this.byUuid = uuids;
+    }
+
+    /** The latest published snapshot; before the first capture, an empty one with tick -1. */
+    public static PlayerSnapshot current() {
+        return current;
+    }
+
+    /** Server tick the snapshot was taken on. */
+    public long tick() {
+        return tick;
+    }
+
+    public List<Player> players() {
+        return players;
+    }
+
+    /** The player with this name (any case) or UUID string, or null if not online at {@link #tick()}. */
+    public Player player(String nameOrUuid) {
+        UUID uuid = PlayerIndex.uuid(nameOrUuid);
+        return uuid != null ? byUuid.get(uuid) : byName.get(nameOrUuid.toLowerCase(Locale.ROOT));
+    }
+
+    // ── Capture (server thread) ─────────────────────────────────────────
+
+    /**
+     * Server thread, at the end of every tick: publish a new snapshot when one is due
+     * and a WebSocket client could read it. With none connected the last snapshot is
+     * dropped rather than left to go stale.
+     */
+    static void onServerTick(MinecraftServer server) {
+        int tick = server.getTickCount();
+        if (tick % MinaretConfig.SNAPSHOT_INTERVAL_TICKS.get() != 0) return;
+        WebSocketServer ws = MinaretMod.getWebSocketServer();
+        if (ws != null && ws.hasConnections()) {
+            capture(server, tick);
+        } else if (current != EMPTY) {
+            current = EMPTY;
+        }
+    }
+
+    /** Server thread: capture now unless this tick's snapshot is already out. For console requests. */
+    static void refresh(MinecraftServer server) {
+        int tick = server.getTickCount();
+        if (current.tick != tick) capture(server, tick);
+    }
+
+    static void capture(MinecraftServer server, long tick) {
+        List<ServerPlayer> online = server.getPlayerList().getPlayers();
+        List<Player> players = new ArrayList<>(online.size());
+        for (ServerPlayer p : online) {
+            List<Effect> effects = new ArrayList<>();
+            for (MobEffectInstance e : p.getActiveEffects()) {
+                effects.add(new Effect(
+                    e.getEffect().getRegisteredName(),
+                    e.isInfiniteDuration() ? -1 : e.getDuration(),
+                    e.getAmplifier()
+                ));
+            }
+            players.add(new Player(
+                p.getName().getString(),
+                p.getUUID(),
+                p.getHealth(),
+                p.getMaxHealth(),
+                p.getFoodData().getFoodLevel(),
+                p.getFoodData().getSaturationLevel(),
+                p.getX(),
+                p.getY(),
+                p.getZ(),
+                Compat.dimensionId(p.level()),
+                Compat.getInventorySlot(p.getInventory()),
+                List.copyOf(effects)
+            ));
+        }
+        current = new PlayerSnapshot(tick, players);
+    }
+
+    /** Forget the last server's players. */
+    static void clear() {
+        current = EMPTY;
+    }
+}
@@ -0,0 +1,88 @@
+package com.minaret;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Token buckets for one rate-limited subject — a connection or an authenticated user.
+ *
+ * Each request type with its own {@link Limits} entry has its own bucket; all other
+ * types share the {@code "*"} bucket. A bucket holds up to {@code burst} tokens,
+ * refills at {@code perSecond}, and each request takes one.
+ */
+final class RateLimiter {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String ANY = "*";
+
+    record Limit(double perSecond, double burst) {}
+
+    /** Parsed {@code rate_limits}: request type (or {@code "*"}) to its limit. */
+    record Limits(Map<String, Limit> byType) {
+        static final Limits NONE = new Limits(Map.of());
+
+        boolean isEmpty() {
+            return byType.isEmpty();
+        }
+
+        /** Parse {@code "type=perSecond[/burst]"} entries; malformed ones are logged and skipped. */
+        static Limits parse(List<? extends String> entries) {
+            Map<String, Limit> byType = new HashMap<>();
+            for (String entry : entries) {
+                try {
+                    int eq = entry.indexOf('=');
+                    String type = entry.substring(0, eq).trim();
+                    String[] rate = entry.substring(eq + 1).split("/");
+                    double perSecond = Double.parseDouble(rate[0].trim());
+                    double burst = rate.length > 1 ? Double.parseDouble(rate[1].trim()) : Math.max(1, perSecond);
+                    if (type.isEmpty() || perSecond <= 0 || burst < 1) throw new IllegalArgumentException();
+                    byType.put(type, new Limit(perSecond, burst));
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Ignoring malformed rate_limits entry '{}' (expected type=perSecond/burst)", entry);
+                }
+            }
+            return new Limits(Map.copyOf(byType));
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long lastNanos;
+
+        Bucket(Limit limit, long now) {
+            this.tokens = limit.burst();
+            this.lastNanos = now;
+        }
+
+        /** Take a token: 0 if granted, else nanoseconds until one will be available. */
+        synchronized long take(Limit limit, long now) {
+            tokens = Math.min(limit.burst(), tokens + (now - lastNanos) * limit.perSecond() / 1e9);
+            lastNanos = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / limit.perSecond() * 1e9);
+        }
+    }
+
+    private final Limits limits;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    RateLimiter(Limits limits) {
+        this.limits = limits;
+    }
+
+    /** Charge one request of {@code type}: 0 if allowed, else nanoseconds to wait before retrying. */
+    long acquire(String type) {
+        String key = limits.byType().containsKey(type) ? type : ANY;
+        Limit limit = limits.byType().get(key);
+        if (limit == null) return 0;
+        long now = System.nanoTime();
+        return buckets.computeIfAbsent(key, k -> new Bucket(limit, now)).take(limit, now);
+    }
+}
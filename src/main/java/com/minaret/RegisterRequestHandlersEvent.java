@@ -0,0 +1,53 @@
+package com.minaret;
+
+import java.util.Collections;
+import java.util.Map;
+import net.neoforged.bus.api.Event;
+
+/**
+ * Fired on {@code NeoForge.EVENT_BUS} as the server starts, before the WebSocket
+ * server accepts clients. Listeners add request types alongside the built-in ones:
+ *
+ * <pre>{@code
+ * NeoForge.EVENT_BUS.addListener((RegisterRequestHandlersEvent e) ->
+ *     e.register("myStats", null, RequestHandler.Affinity.CONNECTION, (args, server, respond) -> ...));
+ * }</pre>
+ *
+ * Requests then reach the handler as {@code {"type":"myStats", ...}}.
+ */
+public class RegisterRequestHandlersEvent extends Event {
+
+    private final Map<String, MessageDispatcher.Route> routes;
+
+    RegisterRequestHandlersEvent() {
+        this.routes = MessageDispatcher.builtins();
+    }
+
+    /**
+     * Register {@code handler} for requests of {@code type}.
+     *
+     * @param subject the argument a legacy-form request carries as the value of its
+     *     type key ({@code {"myStats":"x"}} sets {@code subject} to {@code "x"}), and
+     *     which must then be present; null if the type has no required argument
+     * @throws IllegalStateException if {@code type} is already registered
+     */
+    public void register(String type, String subject, RequestHandler.Affinity affinity, RequestHandler handler) {
+        register(type, subject, affinity, RequestHandler.Priority.NORMAL, handler);
+    }
+
+    /** As above, with the scheduling lane for {@link RequestHandler.Affinity#SERVER_THREAD} work. */
+    public void register(
+        String type,
+        String subject,
+        RequestHandler.Affinity affinity,
+        RequestHandler.Priority priority,
+        RequestHandler handler
+    ) {
+        if (routes.containsKey(type)) throw new IllegalStateException("Request type already registered: " + type);
+        routes.put(type, new MessageDispatcher.Route(subject, affinity, priority, handler));
+    }
+
+    Map<String, MessageDispatcher.Route> routes() {
+        return Collections.unmodifiableMap(routes);
+    }
+}
@@ -0,0 +1,52 @@
+package com.minaret;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The last {@code capacity} broadcast events, numbered. Each appended event gets
+ * the next sequence number (from 1) in its {@code "seq"} field and overwrites the
+ * oldest once the ring is full. Numbering may start after an earlier run's events
+ * (see {@link EventJournal}), which are not held. Not thread-safe; {@link WebSocketServer} guards it
+ * together with the fan-out, so sequence order is delivery order.
+ */
+final class ReplayBuffer {
+
+    private final Map<String, Object>[] events;
+    /** Sequence number of the first event appended here. */
+    private final long first;
+    /** Sequence number of the latest event, {@code first - 1} before the first. */
+    private long latest;
+
+    /** @param latest sequence number of the last event before this buffer, 0 if none */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ReplayBuffer(int capacity, long latest) {
+        this.events = new Map[capacity];
+        this.first = latest + 1;
+        this.latest = latest;
+    }
+
+    /** Number {@code event}, keep it, and return its sequence number. */
+    long append(Map<String, Object> event) {
+        long seq = ++latest;
+        event.put("seq", seq);
+        if (events.length > 0) events[(int) (seq % events.length)] = event;
+        return seq;
+    }
+
+    long latest() {
+        return latest;
+    }
+
+    /** Oldest sequence number still held; {@code latest + 1} when empty. */
+    long oldest() {
+        return Math.max(first, latest - events.length + 1);
+    }
+
+    /** Each held event with sequence number in {@code (after, upTo]}, in order. */
+    void forEach(long after, long upTo, Consumer<Map<String, Object>> action) {
+        for (long seq = Math.max(after + 1, oldest()); seq <= Math.min(upTo, latest); seq++) {
+            action.accept(events[(int) (seq % events.length)]);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.minaret;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * A WebSocket request handler, registered under a request {@code type} through
+ * {@link RegisterRequestHandlersEvent}.
+ *
+ * {@code args} is the decoded request — numbers, lists and objects keep their JSON
+ * types. Each request must be answered exactly once through {@code respond}, with a
+ * map in the usual shape: {@code {"status":"success"|"error", "type":..., ...}}.
+ * An exception thrown by the handler is answered with an error for it.
+ */
+@FunctionalInterface
+public interface RequestHandler {
+
+    /** Where the dispatcher runs a handler. */
+    enum Affinity {
+        /** On the server thread, in the request tick. Required for any world or player access. */
+        SERVER_THREAD,
+        /**
+         * Immediately, off the server thread: on the connection's own thread, or on a
+         * virtual thread under the nio transport. Must not touch game state. Replies to
+         * pipelined requests may then arrive out of order; clients match them by {@code id}.
+         */
+        CONNECTION,
+        /** Off the server thread like {@link #CONNECTION}; may read only state published once per tick. */
+        SNAPSHOT
+    }
+
+    /** Scheduling lane for {@link Affinity#SERVER_THREAD} work; earlier lanes run first each tick. */
+    enum Priority {
+        /** Player-facing actions where latency shows, e.g. {@code use}, {@code cast}. */
+        INTERACTIVE,
+        /** Queries and anything without a stated priority. */
+        NORMAL,
+        /** Throughput work that can wait a tick, e.g. {@code command}, {@code message}. */
+        BULK
+    }
+
+    void handle(Map<String, Object> args, MinecraftServer server, Consumer<Map<String, Object>> respond)
+        throws Exception;
+
+    /**
+     * Optional head start for {@link Affinity#SERVER_THREAD} handlers: called on the
+     * connection thread before the request is queued, for work that needs no game
+     * state (parsing, warming a cache). Under nio that is a shared selector thread, so
+     * it must not block. Best effort — a failure is logged and
+     * {@link #handle} still runs.
+     */
+    default void prepare(Map<String, Object> args, MinecraftServer server) throws Exception {}
+}
@@ -0,0 +1,169 @@
+package com.minaret;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Which connections want which events. Topics are event names ({@code player_kill},
+ * …) or {@code "*"} for all; each topic a connection subscribes to may be limited to
+ * some players, matched against the event's {@code "player"} field.
+ *
+ * A connection that has never subscribed takes every event, as before topics
+ * existed; its first subscribe or unsubscribe makes its topics explicit. The index
+ * lets broadcasters check for zero subscribers before building an event at all.
+ */
+final class Subscriptions {
+
+    static final String ALL = "*";
+
+    /** Topic to the members subscribed to it; {@code "*"} holds the take-everything members. */
+    private final Map<String, Set<Member>> byTopic = new ConcurrentHashMap<>();
+
+    /** One connection's subscriptions. Changes come from its own thread; reads from any. */
+    final class Member {
+
+        final WebSocketServer.Connection connection;
+        /** Topic to lower-cased player names, or to null for every player. Copy-on-write. */
+        private volatile Map<String, Set<String>> topics = new HashMap<>();
+        private boolean explicit;
+        /** Indexed by {@link #add}, until {@link #remove}. */
+        private boolean indexed;
+
+        private Member(WebSocketServer.Connection connection) {
+            this.connection = connection;
+            topics.put(ALL, null);
+        }
+
+        /**
+         * Add {@code topics}, limited to {@code players} (null: everyone). A topic
+         * already taken for everyone stays that way.
+         */
+        synchronized void subscribe(Collection<String> topics, Collection<String> players) {
+            Map<String, Set<String>> next = explicit ? new HashMap<>(this.topics) : new HashMap<>();
+            for (String topic : topics) {
+                if (next.containsKey(topic) && next.get(topic) == null) continue;
+                Set<String> names = null;
+                if (players != null) {
+                    names = next.containsKey(topic) ? new HashSet<>(next.get(topic)) : new HashSet<>();
+                    for (String p : players) names.add(p.toLowerCase(Locale.ROOT));
+                }
+                next.put(topic, names);
+            }
+            replace(next);
+        }
+
+        /** Drop {@code topics}, or every topic when null. */
+        synchronized void unsubscribe(Collection<String> topics) {
+            Map<String, Set<String>> next = explicit && topics != null ? new HashMap<>(this.topics) : new HashMap<>();
+            if (topics != null) next.keySet().removeAll(topics);
+            replace(next);
+        }
+
+        /** Current topics, sorted. */
+        List<String> topics() {
+            List<String> list = new ArrayList<>(topics.keySet());
+            list.sort(null);
+            return list;
+        }
+
+        private void replace(Map<String, Set<String>> next) {
+            Map<String, Set<String>> previous = topics;
+            explicit = true;
+            topics = next;
+            if (!indexed) return;
+            for (String topic : previous.keySet()) {
+                if (!next.containsKey(topic)) leave(topic);
+            }
+            for (String topic : next.keySet()) {
+                if (!previous.containsKey(topic)) join(topic);
+            }
+        }
+
+        // Both under compute, so a set is never emptied and dropped while a join adds to it
+        private void join(String topic) {
+            byTopic.compute(topic, (t, members) -> {
+                if (members == null) members = ConcurrentHashMap.newKeySet();
+                members.add(this);
+                return members;
+            });
+        }
+
+        private void leave(String topic) {
+            byTopic.computeIfPresent(topic, (t, members) -> {
+                members.remove(this);
+                return members.isEmpty() ? null : members;
+            });
+        }
+
+        /** Whether this connection wants an event on {@code topic} about {@code player} (may be null). */
+        boolean wants(String topic, String player) {
+            return accepts(topics, topic, player);
+        }
+
+        /** Whether {@code topics} want an event on {@code topic} about {@code player} (may be null). */
+        private static boolean accepts(Map<String, Set<String>> topics, String topic, String player) {
+            return matches(topics, ALL, player) || (topic != null && matches(topics, topic, player));
+        }
+
+        private static boolean matches(Map<String, Set<String>> topics, String topic, String player) {
+            if (!topics.containsKey(topic)) return false;
+            Set<String> players = topics.get(topic);
+            return players == null || (player != null && players.contains(player.toLowerCase(Locale.ROOT)));
+        }
+    }
+
+    /** A new member taking every event; not indexed until {@link #add}. */
+    Member member(WebSocketServer.Connection connection) {
+        return new Member(connection);
+    }
+
+    /** Start delivering to {@code member}. */
+    void add(Member member) {
+        synchronized (member) {
+            member.indexed = true;
+            for (String topic : member.topics.keySet()) member.join(topic);
+        }
+    }
+
+    /** Stop delivering to {@code member}. */
+    void remove(Member member) {
+        synchronized (member) {
+            member.indexed = false;
+            for (String topic : member.topics.keySet()) member.leave(topic);
+        }
+    }
+
+    /** Whether any connection would take an event on {@code topic}. */
+    boolean wants(String topic) {
+        return byTopic.containsKey(ALL) || byTopic.containsKey(topic);
+    }
+
+    /**
+     * Each member that accepts an event on {@code topic} about {@code player}, once:
+     * members holding {@code "*"} are handled in its pass and skipped in the topic's.
+     */
+    void forEach(String topic, String player, Consumer<Member> action) {
+        Set<Member> all = byTopic.get(ALL);
+        if (all != null) {
+            for (Member m : all) {
+                Map<String, Set<String>> t = m.topics;
+                if (t.containsKey(ALL) && Member.accepts(t, topic, player)) action.accept(m);
+            }
+        }
+        Set<Member> some = topic != null ? byTopic.get(topic) : null;
+        if (some != null) {
+            for (Member m : some) {
+                Map<String, Set<String>> t = m.topics;
+                if (!t.containsKey(ALL) && Member.accepts(t, topic, player)) action.accept(m);
+            }
+        }
+    }
+}
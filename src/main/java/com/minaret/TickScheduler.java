@@ -0,0 +1,170 @@
+package com.minaret;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs Minaret's server-thread work at one point in each tick, within a time budget.
+ *
+ * Tasks are queued from any thread into one lane per {@link RequestHandler.Priority}.
+ * Once a tick the server thread calls {@link #runTick}, which drains the lanes in
+ * priority order until the budget is spent; whatever is left waits for the next tick.
+ * Every non-empty lane still gets at least one task per tick, so a flood of
+ * interactive requests slows bulk work down but cannot stop it.
+ *
+ * Within a lane, each {@link Client} has its own queue and clients take turns one
+ * task at a time, so a client with a thousand queued commands delays another
+ * client's single command by one task, not a thousand.
+ */
+final class TickScheduler {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int LANES = RequestHandler.Priority.values().length;
+
+    /** One submitter's tasks in one lane. */
+    private static final class Backlog {
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        /** True while this backlog is in its lane's ready ring (or being served). */
+        final AtomicBoolean ready = new AtomicBoolean();
+    }
+
+    /** A submitter — typically one connection — with a queue in every lane. */
+    static final class Client {
+        private final Backlog[] lanes = new Backlog[LANES];
+
+        private Client() {
+            for (int i = 0; i < LANES; i++) lanes[i] = new Backlog();
+        }
+    }
+
+    /** Per lane, the clients with work, in turn order. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Queue<Backlog>[] ready = new Queue[LANES];
+    /** Tasks per lane; ConcurrentLinkedQueue.size() would be a full scan. */
+    private final AtomicInteger[] sizes = new AtomicInteger[LANES];
+
+    // ── Stats (written by the server thread only) ──
+    private volatile long lastTickNanos;
+    private volatile int lastTickTasks;
+    private volatile long averageTickNanos;
+    private volatile long overBudgetTicks;
+
+    TickScheduler() {
+        for (int i = 0; i < LANES; i++) {
+            ready[i] = new ConcurrentLinkedQueue<>();
+            sizes[i] = new AtomicInteger();
+        }
+    }
+
+    /** A new submitter with its own turn in every lane. */
+    Client client() {
+        return new Client();
+    }
+
+    /** Queue {@code task} for an upcoming tick. Safe from any thread. */
+    void submit(Client client, RequestHandler.Priority priority, Runnable task) {
+        int lane = priority.ordinal();
+        Backlog backlog = client.lanes[lane];
+        backlog.tasks.add(task);
+        sizes[lane].incrementAndGet();
+        if (backlog.ready.compareAndSet(false, true)) ready[lane].add(backlog);
+    }
+
+    /** Drop everything queued, e.g. work left over from a previous server. */
+    void clear() {
+        for (int i = 0; i < LANES; i++) {
+            Backlog backlog;
+            while ((backlog = ready[i].poll()) != null) {
+                while (backlog.tasks.poll() != null) sizes[i].decrementAndGet();
+                backlog.ready.set(false);
+            }
+        }
+    }
+
+    /**
+     * Server thread, once per tick: run queued tasks, most urgent lane first, until
+     * {@code budgetNanos} has elapsed. Tasks queued while this runs — including by
+     * the tasks themselves — wait for the next tick.
+     */
+    void runTick(long budgetNanos) {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        int ran = 0;
+        boolean overBudget = false;
+        for (int lane = 0; lane < LANES; lane++) {
+            for (int n = sizes[lane].get(), done = 0; n > 0; n--, done++) {
+                if (done > 0 && System.nanoTime() - deadline >= 0) {
+                    overBudget = true;
+                    break;
+                }
+                Backlog backlog = ready[lane].poll();
+                if (backlog == null) break;
+                Runnable task = backlog.tasks.poll();
+                requeue(lane, backlog);
+                if (task == null) continue;
+                sizes[lane].decrementAndGet();
+                ran++;
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    LOGGER.error("Scheduled request failed", e);
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        lastTickNanos = elapsed;
+        lastTickTasks = ran;
+        averageTickNanos += (elapsed - averageTickNanos) / 16;
+        if (overBudget) overBudgetTicks++;
+    }
+
+    /** Back of the ring if the client has more work; otherwise idle until its next submit. */
+    private void requeue(int lane, Backlog backlog) {
+        if (!backlog.tasks.isEmpty()) {
+            ready[lane].add(backlog);
+            return;
+        }
+        backlog.ready.set(false);
+        // A submit that raced the flag reset above saw ready == true and left it to us
+        if (!backlog.tasks.isEmpty() && backlog.ready.compareAndSet(false, true)) ready[lane].add(backlog);
+    }
+
+    // ── Stats ───────────────────────────────────────────────────────────
+
+    /** Tasks waiting in {@code priority}'s lane. */
+    int backlog(RequestHandler.Priority priority) {
+        return sizes[priority.ordinal()].get();
+    }
+
+    /** Tasks waiting in all lanes. */
+    int backlog() {
+        int total = 0;
+        for (AtomicInteger size : sizes) total += size.get();
+        return total;
+    }
+
+    /** Time the last tick spent running tasks. */
+    long lastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /** Tasks run in the last tick. */
+    int lastTickTasks() {
+        return lastTickTasks;
+    }
+
+    /** Moving average of time per tick (weight 1/16 on the latest). */
+    long averageTickNanos() {
+        return averageTickNanos;
+    }
+
+    /** Ticks that ran out of budget with work still queued. */
+    long overBudgetTicks() {
+        return overBudgetTicks;
+    }
+}
@@ -0,0 +1,123 @@
+package com.minaret;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Hashed timer wheel — one thread serves every scheduled task, however many.
+ *
+ * Time is cut into ticks; a task lands in slot {@code deadlineTick % slots} with the
+ * number of full turns it still has to wait. Scheduling and cancelling are O(1) and
+ * lock-free from any thread: new tasks are handed over through a queue, and cancelled
+ * ones are simply skipped when their slot comes up. Precision is one tick, which is
+ * plenty for heartbeats and deadlines measured in seconds.
+ */
+final class TimerWheel {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** A scheduled task. */
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private long rounds;
+        private volatile boolean cancelled = false;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /** Prevent the task from running. Harmless if it already ran. */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final ArrayDeque<Timeout>[] wheel;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    /** Ticks processed so far. Written by the wheel thread only. */
+    private volatile long tick = 0;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(String name, long tickMillis, int slots) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new ArrayDeque[slots];
+        for (int i = 0; i < slots; i++) wheel[i] = new ArrayDeque<>();
+    }
+
+    void start() {
+        running = true;
+        thread = Thread.ofPlatform().name(name).daemon().start(this::run);
+    }
+
+    void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+    }
+
+    /** Run {@code task} on the wheel thread after roughly {@code delayMillis}. */
+    Timeout schedule(Runnable task, long delayMillis) {
+        long ticks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delayMillis) + tickNanos - 1) / tickNanos);
+        Timeout t = new Timeout(task, tick + ticks);
+        incoming.add(t);
+        return t;
+    }
+
+    // ── Wheel thread ────────────────────────────────────────────────────
+
+    private void run() {
+        while (running) {
+            long sleep = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) break;
+                    continue;
+                }
+            }
+            transferIncoming();
+            expire(wheel[(int) (tick % wheel.length)]);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout t;
+        while ((t = incoming.poll()) != null) {
+            if (t.cancelled) continue;
+            // Scheduled against a tick that has passed while queued — due now
+            long due = Math.max(t.deadlineTick, tick);
+            t.rounds = (due - tick) / wheel.length;
+            wheel[(int) (due % wheel.length)].add(t);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> slot) {
+        for (int n = slot.size(); n > 0; n--) {
+            Timeout t = slot.poll();
+            if (t.cancelled) continue;
+            if (t.rounds > 0) {
+                t.rounds--;
+                slot.add(t);
+                continue;
+            }
+            try {
+                t.task.run();
+            } catch (Exception e) {
+                LOGGER.error("Timer task failed", e);
+            }
+        }
+    }
+}
@@ -14,18 +14,24 @@ public final class WebSocketProtocol {
     private static final String WEBSOCKET_MAGIC = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
 
     static final int OPCODE_TEXT  = 0x1;
+    static final int OPCODE_BINARY = 0x2;
     static final int OPCODE_CLOSE = 0x8;
     static final int OPCODE_PING  = 0x9;
     static final int OPCODE_PONG  = 0xA;
 
+    // Close status codes (RFC 6455 §7.4.1)
+    static final int CLOSE_PROTOCOL_ERROR = 1002;
+    static final int CLOSE_INVALID_DATA   = 1007;
+
     private static final int FIN_BIT          = 0x80;
-    private static final int MASK_BIT         = 0x80;
+    /** RSV1 marks the first frame of a compressed message (RFC 7692). */
+    private static final int RSV1_BIT         = 0x40;
     private static final int OPCODE_MASK      = 0x0F;
     private static final int PAYLOAD_LEN_MASK = 0x7F;
     private static final int PAYLOAD_LEN_16BIT = 126;
-    private static final int PAYLOAD_LEN_64BIT = 127;
-    private static final int MASK_KEY_LENGTH  = 4;
-    private static final int MAX_PAYLOAD_16BIT = 65536;
+    private static final int OPCODE_CONTINUATION = 0x0;
+    /** Largest payload per outgoing frame; bigger messages are fragmented. */
+    static final int MAX_FRAGMENT = 65535;
 
     private WebSocketProtocol() {}
 
@@ -47,6 +53,26 @@ public final class WebSocketProtocol {
         return headers;
     }
 
+    /**
+     * Find the end of an HTTP header block ({@code \r\n\r\n}) in {@code buffer[0, length)}.
+     * Returns the index of the first byte after the terminator, or -1 if not yet complete.
+     */
+    public static int findHeaderEnd(byte[] buffer, int length) {
+        for (int i = 3; i < length; i++) {
+            if (buffer[i] == '\n' && buffer[i - 1] == '\r'
+                && buffer[i - 2] == '\n' && buffer[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Parse a complete HTTP header block already held in memory. Returns null if not a GET request. */
+    public static Map<String, String> parseHttpHeaders(byte[] buffer, int length) throws IOException {
+        String block = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        return readHttpHeaders(new BufferedReader(new StringReader(block)));
+    }
+
     /** Check if headers indicate a WebSocket upgrade request. */
     public static boolean isWebSocketUpgrade(Map<String, String> headers) {
         return "websocket".equalsIgnoreCase(headers.get("upgrade"))
@@ -67,102 +93,97 @@ public final class WebSocketProtocol {
         return Base64.getEncoder().encodeToString(hash);
     }
 
-    // ── Frame parsing ───────────────────────────────────────────────────
+    // ── Frame encoding ──────────────────────────────────────────────────
+    //
+    // Parsing lives in FrameDecoder, which keeps per-connection streaming state.
 
     /**
-     * Parsed WebSocket frame.
-     *
-     * @param opcode   Frame opcode (OPCODE_TEXT, OPCODE_CLOSE, etc.)
-     * @param payload  Decoded (unmasked) payload bytes.
-     * @param consumed Number of bytes consumed from the buffer to produce this frame.
-     *                 {@code -1} means an unsupported frame was encountered (e.g. 64-bit payload)
-     *                 and the connection should be closed immediately.
+     * Encode a complete WebSocket message (header + payload) into one array,
+     * for transports that queue bytes instead of writing to a stream.
      */
-    public record Frame(int opcode, byte[] payload, int consumed) {}
+    public static byte[] encodeFrame(int opcode, byte[] payload) {
+        return encodeMessage(opcode, false, payload, 0, payload.length);
+    }
 
     /**
-     * Parse a WebSocket frame starting at {@code start} within {@code buffer}.
-     * Returns {@code null} if there is not enough data to complete the frame yet
-     * (caller should accumulate more bytes and retry).
-     * Returns a Frame with {@code consumed == -1} for unsupported 64-bit payloads
-     * (caller should close the connection).
+     * Encode {@code payload[off, off + len)} as one message. Payloads longer than
+     * {@link #MAX_FRAGMENT} are split into a first frame plus continuation frames,
+     * all in the returned array; RSV1 (if set) goes on the first frame only.
      */
-    public static Frame parseFrame(byte[] buffer, int start, int length) {
-        if (length < 2) return null;
-
-        int opcode    = buffer[start]     & OPCODE_MASK;
-        boolean masked = (buffer[start + 1] & MASK_BIT) != 0;
-        int payloadLen = buffer[start + 1] & PAYLOAD_LEN_MASK;
-        int offset = 2; // relative to start
-
-        if (payloadLen == PAYLOAD_LEN_16BIT) {
-            if (length < 4) return null;
-            payloadLen = ((buffer[start + 2] & 0xFF) << 8) | (buffer[start + 3] & 0xFF);
-            offset = 4;
-        } else if (payloadLen == PAYLOAD_LEN_64BIT) {
-            // 64-bit payload length not supported — signal caller to close
-            return new Frame(OPCODE_CLOSE, new byte[0], -1);
-        }
-
-        byte[] mask = null;
-        if (masked) {
-            if (length < offset + MASK_KEY_LENGTH) return null;
-            mask = new byte[MASK_KEY_LENGTH];
-            System.arraycopy(buffer, start + offset, mask, 0, MASK_KEY_LENGTH);
-            offset += MASK_KEY_LENGTH;
-        }
-
-        if (length < offset + payloadLen) return null;
-
-        byte[] payload = new byte[payloadLen];
-        System.arraycopy(buffer, start + offset, payload, 0, payloadLen);
-
-        if (masked && mask != null) {
-            for (int i = 0; i < payload.length; i++) {
-                payload[i] ^= mask[i % MASK_KEY_LENGTH];
+    public static byte[] encodeMessage(int opcode, boolean rsv1, byte[] payload, int off, int len) {
+        int fragments = Math.max(1, (len + MAX_FRAGMENT - 1) / MAX_FRAGMENT);
+        int lastLen = len - (fragments - 1) * MAX_FRAGMENT;
+        int size = (fragments - 1) * (4 + MAX_FRAGMENT) + headerLength(lastLen) + lastLen;
+
+        byte[] out = new byte[size];
+        int pos = 0;
+        for (int i = 0; i < fragments; i++) {
+            boolean last = i == fragments - 1;
+            int n = last ? lastLen : MAX_FRAGMENT;
+            int first = (last ? FIN_BIT : 0)
+                | (i == 0 && rsv1 ? RSV1_BIT : 0)
+                | (i == 0 ? opcode & OPCODE_MASK : OPCODE_CONTINUATION);
+            out[pos++] = (byte) first;
+            if (n < PAYLOAD_LEN_16BIT) {
+                out[pos++] = (byte) n;
+            } else {
+                out[pos++] = (byte) PAYLOAD_LEN_16BIT;
+                out[pos++] = (byte) ((n >> 8) & 0xFF);
+                out[pos++] = (byte) (n & 0xFF);
             }
+            System.arraycopy(payload, off, out, pos, n);
+            pos += n;
+            off += n;
         }
-
-        return new Frame(opcode, payload, offset + payloadLen);
+        return out;
     }
 
-    /** Convenience overload — parse from the start of the buffer. */
-    public static Frame parseFrame(byte[] buffer, int length) {
-        return parseFrame(buffer, 0, length);
+    private static int headerLength(int payloadLen) {
+        return payloadLen < PAYLOAD_LEN_16BIT ? 2 : 4;
     }
 
-    // ── Frame sending ───────────────────────────────────────────────────
-
-    /** Send a WebSocket frame. Output must be externally synchronized. */
-    public static void sendFrame(OutputStream output, int opcode, byte[] payload) throws IOException {
-        output.write(FIN_BIT | (opcode & OPCODE_MASK));
+    /** Header length of the frame at {@code pos} in an array produced by {@link #encodeMessage}. */
+    static int headerLength(byte[] encoded, int pos) {
+        return (encoded[pos + 1] & PAYLOAD_LEN_MASK) == PAYLOAD_LEN_16BIT ? 4 : 2;
+    }
 
-        if (payload.length < PAYLOAD_LEN_16BIT) {
-            output.write(payload.length);
-        } else if (payload.length < MAX_PAYLOAD_16BIT) {
-            output.write(PAYLOAD_LEN_16BIT);
-            output.write((payload.length >> 8) & 0xFF);
-            output.write(payload.length & 0xFF);
-        } else {
-            throw new IOException("Message too large: " + payload.length + " bytes");
-        }
+    /** True if {@code encoded} is an uncompressed text message, fragmented or not. */
+    static boolean isUncompressedText(byte[] encoded) {
+        return encoded.length >= 2
+            && (encoded[0] & (RSV1_BIT | OPCODE_MASK)) == OPCODE_TEXT;
+    }
 
-        output.write(payload);
-        output.flush();
+    /** True if the first frame in {@code encoded} has FIN set, i.e. the message is one frame. */
+    static boolean isSingleFrame(byte[] encoded) {
+        return (encoded[0] & FIN_BIT) != 0;
     }
 
-    /** Send a text frame. */
-    public static void sendText(OutputStream output, String message) throws IOException {
-        sendFrame(output, OPCODE_TEXT, message.getBytes(StandardCharsets.UTF_8));
+    /** Concatenate the payloads of a fragmented message produced by {@link #encodeMessage}. */
+    static byte[] joinFragments(byte[] encoded) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length);
+        int pos = 0;
+        while (pos < encoded.length) {
+            int hl = headerLength(encoded, pos);
+            int n = hl == 2
+                ? encoded[pos + 1] & PAYLOAD_LEN_MASK
+                : ((encoded[pos + 2] & 0xFF) << 8) | (encoded[pos + 3] & 0xFF);
+            out.write(encoded, pos + hl, n);
+            pos += hl + n;
+        }
+        return out.toByteArray();
     }
 
-    /** Send a close frame. */
-    public static void sendClose(OutputStream output) throws IOException {
-        sendFrame(output, OPCODE_CLOSE, new byte[0]);
+    /**
+     * Encode a text message once, so the same bytes can be queued to any number
+     * of clients. The returned array must not be modified.
+     */
+    public static byte[] encodeText(String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        return encodeMessage(OPCODE_TEXT, false, payload, 0, payload.length);
     }
 
-    /** Send a pong frame. */
-    public static void sendPong(OutputStream output, byte[] payload) throws IOException {
-        sendFrame(output, OPCODE_PONG, payload);
+    /** Binary counterpart of {@link #encodeText}. The returned array must not be modified. */
+    public static byte[] encodeBinary(byte[] payload) {
+        return encodeMessage(OPCODE_BINARY, false, payload, 0, payload.length);
     }
 }
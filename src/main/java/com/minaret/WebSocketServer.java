@@ -2,44 +2,91 @@ package com.minaret;
 
 import java.io.*;
 import java.net.InetAddress;
+import java.net.ProtocolException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.storage.LevelResource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * WebSocket server — manages connections, authentication, and lifecycle.
  * Delegates framing to WebSocketProtocol and message handling to MessageDispatcher.
+ *
+ * Two transports are available (config {@code transport}):
+ *   blocking — one virtual thread and blocking Socket per connection (default)
+ *   nio      — a few selector event loops shared by all connections, see {@link NioTransport}
  */
 public class WebSocketServer {
 
     private static final Logger LOGGER = LogManager.getLogger();
     private static final int BUFFER_SIZE = 4096;
+    /** Frames drained together are coalesced into writes of up to this many bytes. */
+    static final int WRITE_BATCH_BYTES = 65_536;
     private static final int SHUTDOWN_TIMEOUT_SECONDS = 5;
     /**
      * Idle read timeout: if a client sends no data for this long the connection is closed.
      * Prevents zombie threads from stuck/dead clients holding executor slots indefinitely.
      */
     private static final int READ_TIMEOUT_MS = 300_000; // 5 minutes
-    /** Max bytes accumulated across reads before giving up on a connection. */
-    private static final int MAX_ACCUMULATOR = 131_072; // 128 KB
+    /** Heartbeat wheel: 100 ms ticks, 512 slots ≈ 51 s per turn. */
+    private static final long TIMER_TICK_MS = 100;
+    private static final int TIMER_SLOTS = 512;
+    /** How often a history stream rechecks a full outbound queue. */
+    private static final long BACKPRESSURE_POLL_MS = 5;
 
     private final ServerSocket serverSocket;
+    private final NioTransport nio;
     private final MinecraftServer mcServer;
     private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    /** Which connections want which events. */
+    private final Subscriptions subscriptions = new Subscriptions();
+    /**
+     * Recent events for {@code resume}. Its lock also covers event fan-out and
+     * connection registration, so every client sees events in sequence order.
+     */
+    private final ReplayBuffer replay;
+    private final boolean replayEnabled;
+    /** Durable event history, or null when disabled; appended under the replay lock. */
+    private final EventJournal journal;
+    /** Frames discarded by outbound overflow policies, across all connections. */
+    private final LongAdder droppedFrames = new LongAdder();
+    /** Sockets holding an admission slot — handshaking or open. */
+    private final AtomicInteger admitted = new AtomicInteger();
+    /** Admitted sockets per client address; only kept when a per-address limit is set. */
+    private final ConcurrentHashMap<InetAddress, Integer> admittedPerAddress = new ConcurrentHashMap<>();
+    private final LongAdder rejectedConnections = new LongAdder();
     private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /** Shared scheduler for per-connection heartbeats. */
+    final TimerWheel timers = new TimerWheel("minaret-timer", TIMER_TICK_MS, TIMER_SLOTS);
     private volatile boolean running = false;
     private final String authUsername;
     private final String authPassword;
     private final boolean authEnabled;
+    private final long heartbeatIntervalMs;
+    private final int heartbeatMaxMissed;
+    private final boolean tcpNoDelay;
+    private final int sendBufferBytes;
+    private final int maxConnections;
+    private final int maxPerAddress;
+    final int handshakeTimeoutMs;
+    private final int retryAfterSeconds;
 
     public WebSocketServer(
         String host,
@@ -52,41 +99,205 @@ public class WebSocketServer {
         this.authUsername = username;
         this.authPassword = password;
         this.authEnabled = !username.isEmpty();
+        this.tcpNoDelay = MinaretConfig.TCP_NODELAY.get();
+        this.sendBufferBytes = MinaretConfig.SEND_BUFFER_BYTES.get();
+        this.heartbeatIntervalMs = MinaretConfig.HEARTBEAT_INTERVAL_SECONDS.get() * 1000L;
+        this.heartbeatMaxMissed = MinaretConfig.HEARTBEAT_MAX_MISSED.get();
+        this.maxConnections = MinaretConfig.MAX_CONNECTIONS.get();
+        this.maxPerAddress = MinaretConfig.MAX_CONNECTIONS_PER_ADDRESS.get();
+        this.handshakeTimeoutMs = MinaretConfig.HANDSHAKE_TIMEOUT_MS.get();
+        this.retryAfterSeconds = MinaretConfig.RETRY_AFTER_SECONDS.get();
+        int backlog = MinaretConfig.ACCEPT_BACKLOG.get();
 
         // Bind to the configured host; null = all interfaces (0.0.0.0)
         InetAddress bindAddr = (host.isEmpty() || host.equals("0.0.0.0"))
             ? null
             : InetAddress.getByName(host);
-        this.serverSocket = new ServerSocket(port, 50, bindAddr);
 
-        LOGGER.info("WebSocket server created on {}:{} (auth: {})",
+        boolean useNio = MinaretConfig.TRANSPORT_NIO.equals(MinaretConfig.TRANSPORT.get());
+        if (useNio) {
+            this.serverSocket = null;
+            this.nio = new NioTransport(this, bindAddr, port, backlog,
+                MinaretConfig.NIO_THREADS.get());
+        } else {
+            this.serverSocket = new ServerSocket(port, backlog, bindAddr);
+            this.nio = null;
+        }
+
+        // Opened once the port is bound, so a failed start leaves no segment mapped
+        this.journal = MinaretConfig.JOURNAL_ENABLED.get() ? openJournal(mcServer) : null;
+        // With a journal, numbering carries on from the previous run
+        this.replay = new ReplayBuffer(MinaretConfig.REPLAY_BUFFER_EVENTS.get(), journal != null ? journal.latest() : 0);
+        this.replayEnabled = MinaretConfig.REPLAY_BUFFER_EVENTS.get() > 0 || journal != null;
+
+        LOGGER.info("WebSocket server created on {}:{} (auth: {}, transport: {})",
             bindAddr == null ? "*" : bindAddr.getHostAddress(),
             port,
-            authEnabled ? "enabled" : "disabled"
+            authEnabled ? "enabled" : "disabled",
+            useNio ? "nio" : "blocking"
         );
     }
 
     public void start() {
         running = true;
+        timers.start();
+        if (nio != null) {
+            nio.start();
+            LOGGER.info("WebSocket server started on port {}", nio.getLocalPort());
+            return;
+        }
         executor.submit(this::acceptLoop);
         LOGGER.info("WebSocket server started on port {}", serverSocket.getLocalPort());
     }
 
-    /** Sends a message to all connected clients. Called from server thread. */
+    /**
+     * Sends a message to all connected clients. Called from server thread;
+     * only encodes and queues, never waits on a socket.
+     */
     public void broadcast(String message) {
-        connections.forEach(conn -> {
-            try {
-                conn.send(message);
-            } catch (IOException e) {
-                LOGGER.debug("Broadcast failed for connection: {}", e.getMessage());
+        if (connections.isEmpty()) return;
+        broadcastFrame(WebSocketProtocol.encodeText(message));
+    }
+
+    /** Whether any client has completed the handshake and not yet disconnected. */
+    public boolean hasConnections() {
+        return !connections.isEmpty();
+    }
+
+    /**
+     * Queues one pre-encoded frame (see {@link WebSocketProtocol#encodeText}) to every
+     * client. The array is shared by all connections, so fan-out costs a single encode.
+     */
+    public void broadcastFrame(byte[] frame) {
+        connections.forEach(conn -> conn.enqueue(frame, false));
+    }
+
+    /**
+     * Whether an event on {@code topic} should be built: some client is subscribed to
+     * it, or the replay buffer or journal is on (they keep every event for clients that
+     * are away).
+     */
+    public boolean hasSubscribers(String topic) {
+        return replayEnabled || subscriptions.wants(topic);
+    }
+
+    /**
+     * Numbers an event map ({@code "seq"}), keeps it for {@code resume}, and queues it to
+     * every client subscribed to its {@code "event"} topic (and, if filtered, its
+     * {@code "player"}) in the client's negotiated encoding — JSON text, or
+     * {@link BinaryProtocol} for binary-subprotocol clients. Each encoding is built at
+     * most once, and only if some client needs it.
+     */
+    public void broadcastEvent(Map<String, Object> event) {
+        Map<String, Object> numbered = new LinkedHashMap<>(event);
+        String topic = numbered.get("event") instanceof String t ? t : null;
+        String player = numbered.get("player") instanceof String p ? p : null;
+        byte[][] encoded = new byte[2][];
+        synchronized (replay) {
+            long seq = replay.append(numbered);
+            if (journal != null) journal.append(seq, System.currentTimeMillis(), event);
+            subscriptions.forEach(topic, player, member -> member.connection.sendEvent(numbered, encoded));
+        }
+    }
+
+    /** Sequence number of the latest event broadcast, 0 before the first. */
+    long latestSeq() {
+        synchronized (replay) {
+            return replay.latest();
+        }
+    }
+
+    /** The event journal, or null when disabled. */
+    EventJournal journal() {
+        return journal;
+    }
+
+    /** Run {@code task} on a virtual thread of this server's, e.g. work that may block on a client. */
+    void background(Runnable task) {
+        executor.execute(task);
+    }
+
+    /** Outcome of a {@code history} query: events sent, and the {@code seq} to continue from (0: none). */
+    record History(int sent, long nextSeq) {}
+
+    /**
+     * Send {@code conn}, in its encoding, up to {@code limit} journaled events in the
+     * given ranges and on {@code topics} (null: every topic), each with its
+     * {@code seq} and {@code time}. Waits for room in the client's outbound queue
+     * rather than overflowing it, so call it off the connection's thread.
+     */
+    History history(
+        Connection conn,
+        long fromSeq,
+        long toSeq,
+        long since,
+        long until,
+        Set<String> topics,
+        int limit
+    ) throws IOException {
+        int[] sent = {0};
+        long[] next = {0};
+        byte[][] encoded = new byte[2][];
+        journal.read(fromSeq, toSeq, since, until, e -> {
+            if (topics != null && !topics.contains(e.event().get("event"))) return true;
+            if (sent[0] == limit) {
+                next[0] = e.seq();
+                return false;
             }
+            if (!conn.awaitRoom()) return false;
+            Map<String, Object> event = e.event();
+            event.put("seq", e.seq());
+            event.put("time", e.time());
+            encoded[0] = null;
+            encoded[1] = null;
+            conn.sendEvent(event, encoded);
+            sent[0]++;
+            return true;
         });
+        return new History(sent[0], next[0]);
+    }
+
+    /** Outcome of a {@code resume}: what was replayed and whether events were lost. */
+    record Resume(long latest, long oldest, int replayed, boolean gap) {}
+
+    /**
+     * Send {@code conn} the events it subscribes to numbered after {@code after}, up to
+     * the last one broadcast before it connected; later ones it got live. Null if
+     * {@code after} is ahead of the latest event (e.g. the server restarted).
+     *
+     * The replay lock is held only to pick the events; sending waits for room in the
+     * client's outbound queue like {@link #history}, so call it off the connection's thread.
+     */
+    Resume resume(Connection conn, long after) {
+        List<Map<String, Object>> held = new ArrayList<>();
+        long latest;
+        long oldest;
+        synchronized (replay) {
+            if (after > replay.latest()) return null;
+            replay.forEach(after, conn.joinedSeq, e -> {
+                if (conn.events.wants((String) e.get("event"), (String) e.get("player"))) held.add(e);
+            });
+            latest = replay.latest();
+            oldest = replay.oldest();
+        }
+        int replayed = 0;
+        byte[][] encoded = new byte[2][];
+        for (Map<String, Object> e : held) {
+            if (!conn.awaitRoom()) break;
+            encoded[0] = null;
+            encoded[1] = null;
+            conn.sendEvent(e, encoded);
+            replayed++;
+        }
+        return new Resume(latest, oldest, replayed, after + 1 < oldest);
     }
 
     public void stop() {
         running = false;
+        timers.stop();
+        if (nio != null) nio.stop();
         try {
-            if (!serverSocket.isClosed()) serverSocket.close();
+            if (serverSocket != null && !serverSocket.isClosed()) serverSocket.close();
         } catch (IOException e) {
             LOGGER.warn("Error closing server socket", e);
         }
@@ -102,9 +313,121 @@ public class WebSocketServer {
             executor.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        if (journal != null) {
+            synchronized (replay) {
+                journal.close();
+            }
+        }
         LOGGER.info("WebSocket server stopped");
     }
 
+    /** The event journal in the world folder, or null if it cannot be opened. */
+    private static EventJournal openJournal(MinecraftServer mcServer) {
+        Path dir = mcServer.getWorldPath(LevelResource.ROOT).resolve("minaret").resolve("events");
+        try {
+            return new EventJournal(
+                dir,
+                MinaretConfig.JOURNAL_SEGMENT_MB.get() << 20,
+                (long) MinaretConfig.JOURNAL_RETENTION_MB.get() << 20,
+                TimeUnit.HOURS.toMillis(MinaretConfig.JOURNAL_RETENTION_HOURS.get())
+            );
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to open event journal at {}; running without it", dir, e);
+            return null;
+        }
+    }
+
+    /** Total frames dropped because a client's outbound queue was full. */
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    /** Connections turned away by admission control (server full or per-address limit). */
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    /** Point-in-time view of one client, for {@code /minaret clients}. */
+    public record ConnectionStats(
+        String remote,
+        boolean binary,
+        double rttMillis,
+        int queuedFrames,
+        long droppedFrames,
+        long requests,
+        long rateLimited
+    ) {}
+
+    /** Per-client stats; {@code rttMillis} is -1 until the first pong arrives. */
+    public List<ConnectionStats> getConnectionStats() {
+        List<ConnectionStats> stats = new ArrayList<>();
+        for (Connection conn : connections) {
+            long rtt = conn.rttNanos;
+            stats.add(new ConnectionStats(
+                String.valueOf(conn.remoteAddress()),
+                conn.binary,
+                rtt < 0 ? -1 : rtt / 1_000_000.0,
+                conn.outbound.size(),
+                conn.getDroppedFrames(),
+                conn.session.requests(),
+                conn.session.rateLimited()
+            ));
+        }
+        return stats;
+    }
+
+    /** Publish an upgraded connection: it starts receiving broadcasts and heartbeats. */
+    void register(Connection conn) {
+        synchronized (replay) {
+            connections.add(conn);
+            subscriptions.add(conn.events);
+            conn.joinedSeq = replay.latest();
+        }
+        if (heartbeatIntervalMs > 0) conn.scheduleHeartbeat();
+    }
+
+    /** Apply the configured TCP options to an accepted client socket. */
+    void tuneSocket(Socket socket) throws IOException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        if (sendBufferBytes > 0) socket.setSendBufferSize(sendBufferBytes);
+    }
+
+    // ── Admission control ───────────────────────────────────────────────
+
+    /**
+     * Reserve a slot for a freshly accepted socket. Returns null if admitted — the
+     * slot must be given back with {@link #release} when the socket closes — or the
+     * HTTP response to send before closing it. Runs on the accepting thread, so a
+     * reconnect storm is turned away before it costs a thread or a buffer.
+     */
+    String admit(InetAddress address) {
+        if (admitted.incrementAndGet() > maxConnections && maxConnections > 0) {
+            admitted.decrementAndGet();
+            rejectedConnections.increment();
+            return rejection(503, "Service Unavailable", "Server full");
+        }
+        if (maxPerAddress > 0 && admittedPerAddress.merge(address, 1, Integer::sum) > maxPerAddress) {
+            release(address);
+            rejectedConnections.increment();
+            return rejection(429, "Too Many Requests", "Too many connections");
+        }
+        return null;
+    }
+
+    /** Give back a slot taken by {@link #admit}. */
+    void release(InetAddress address) {
+        admitted.decrementAndGet();
+        if (maxPerAddress > 0) admittedPerAddress.computeIfPresent(address, (a, n) -> n > 1 ? n - 1 : null);
+    }
+
+    /** A rejection whose Retry-After is jittered over [base, 2 × base] so reconnects spread out. */
+    private String rejection(int status, String reason, String body) {
+        int retryAfter = retryAfterSeconds + ThreadLocalRandom.current().nextInt(retryAfterSeconds + 1);
+        return "HTTP/1.1 " + status + " " + reason + "\r\n" +
+            "Retry-After: " + retryAfter + "\r\nConnection: close\r\n" +
+            "Content-Type: text/plain\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+    }
+
     // ── Accept loop ─────────────────────────────────────────────────────
 
     private void acceptLoop() {
@@ -112,16 +435,37 @@ public class WebSocketServer {
             try {
                 Socket socket = serverSocket.accept();
                 LOGGER.debug("New connection from: {}", socket.getRemoteSocketAddress());
-                executor.submit(() -> handleNewConnection(socket));
+                InetAddress address = socket.getInetAddress();
+                String rejected = admit(address);
+                if (rejected != null) {
+                    LOGGER.debug("Rejected connection from {}: {}", address, rejected.lines().findFirst().orElse(""));
+                    reject(socket, rejected);
+                    continue;
+                }
+                executor.submit(() -> handleNewConnection(socket, address));
             } catch (IOException e) {
                 if (running) LOGGER.error("Error accepting connection", e);
             }
         }
     }
 
-    private void handleNewConnection(Socket socket) {
+    /** Best-effort rejection reply; a few hundred bytes always fit a fresh socket's send buffer. */
+    private static void reject(Socket socket, String response) {
+        try (socket) {
+            socket.getOutputStream().write(response.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {}
+    }
+
+    private void handleNewConnection(Socket socket, InetAddress address) {
+        boolean handedOff = false;
+        // Whole-handshake deadline: SO_TIMEOUT alone restarts on every byte a slow client trickles
+        TimerWheel.Timeout deadline = timers.schedule(() -> {
+            LOGGER.debug("Handshake timed out: {}", socket.getRemoteSocketAddress());
+            try { socket.close(); } catch (IOException ignored) {}
+        }, handshakeTimeoutMs);
         try {
-            socket.setSoTimeout(READ_TIMEOUT_MS);
+            socket.setSoTimeout(handshakeTimeoutMs);
+            tuneSocket(socket);
 
             BufferedReader reader = new BufferedReader(
                 new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)
@@ -134,40 +478,92 @@ public class WebSocketServer {
                 return;
             }
 
-            if (!WebSocketProtocol.isWebSocketUpgrade(headers)) {
-                WebSocketProtocol.sendHttpResponse(output,
-                    "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n" +
-                    "Content-Length: 42\r\n\r\nWebSocket endpoint - use WebSocket client"
-                );
-                socket.close();
-                return;
-            }
+            deadline.cancel();
 
-            if (authEnabled && !isValidAuth(headers.get("authorization"))) {
-                WebSocketProtocol.sendHttpResponse(output,
-                    "HTTP/1.1 401 Unauthorized\r\n" +
-                    "WWW-Authenticate: Basic realm=\"Minaret WebSocket\"\r\n" +
-                    "Content-Type: text/plain\r\nContent-Length: 12\r\n\r\nUnauthorized"
-                );
+            Handshake hs = handshake(headers, socket.getRemoteSocketAddress());
+            WebSocketProtocol.sendHttpResponse(output, hs.response());
+            if (!hs.upgraded()) {
                 socket.close();
-                LOGGER.warn("Authentication failed from: {}", socket.getRemoteSocketAddress());
                 return;
             }
 
-            String acceptKey = WebSocketProtocol.generateAcceptKey(headers.get("sec-websocket-key"));
-            WebSocketProtocol.sendHttpResponse(output,
-                "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n" +
-                "Connection: Upgrade\r\nSec-WebSocket-Accept: " + acceptKey + "\r\n\r\n"
-            );
-
-            Connection conn = new Connection(socket, mcServer, connections);
-            connections.add(conn);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            BlockingConnection conn = new BlockingConnection(socket, this, address);
+            conn.applyHandshake(hs);
+            handedOff = true; // the connection releases its slot on close
+            register(conn);
             executor.submit(conn::run);
             LOGGER.info("WebSocket connection established: {}", socket.getRemoteSocketAddress());
         } catch (Exception e) {
-            LOGGER.error("Error handling new connection", e);
+            if (socket.isClosed() || e instanceof SocketTimeoutException) {
+                LOGGER.debug("Handshake abandoned by {}: {}", address, e.getMessage());
+            } else {
+                LOGGER.error("Error handling new connection", e);
+            }
             try { socket.close(); } catch (IOException ignored) {}
+        } finally {
+            deadline.cancel();
+            if (!handedOff) release(address);
+        }
+    }
+
+    // ── Handshake ───────────────────────────────────────────────────────
+
+    /**
+     * Outcome of an HTTP upgrade request.
+     *
+     * @param response Raw HTTP response to write back to the client.
+     * @param upgraded True if the connection switched to WebSocket framing;
+     *                 false means close after writing the response.
+     * @param deflate  Negotiated permessage-deflate state, or null.
+     * @param binary   True if the client chose the {@value BinaryProtocol#SUBPROTOCOL} subprotocol.
+     */
+    record Handshake(String response, boolean upgraded, PerMessageDeflate deflate, boolean binary) {}
+
+    /** Validate upgrade headers and credentials. Shared by both transports. */
+    Handshake handshake(Map<String, String> headers, SocketAddress remote) throws Exception {
+        if (!WebSocketProtocol.isWebSocketUpgrade(headers)) {
+            return new Handshake(
+                "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n" +
+                "Content-Length: 42\r\n\r\nWebSocket endpoint - use WebSocket client",
+                false,
+                null,
+                false
+            );
+        }
+
+        if (authEnabled && !isValidAuth(headers.get("authorization"))) {
+            LOGGER.warn("Authentication failed from: {}", remote);
+            return new Handshake(
+                "HTTP/1.1 401 Unauthorized\r\n" +
+                "WWW-Authenticate: Basic realm=\"Minaret WebSocket\"\r\n" +
+                "Content-Type: text/plain\r\nContent-Length: 12\r\n\r\nUnauthorized",
+                false,
+                null,
+                false
+            );
         }
+
+        PerMessageDeflate deflate = MinaretConfig.DEFLATE_ENABLED.get()
+            ? PerMessageDeflate.negotiate(
+                headers.get("sec-websocket-extensions"),
+                MinaretConfig.DEFLATE_CONTEXT_TAKEOVER.get(),
+                MinaretConfig.DEFLATE_THRESHOLD.get())
+            : null;
+
+        boolean binary = BinaryProtocol.offered(headers.get("sec-websocket-protocol"));
+
+        String acceptKey = WebSocketProtocol.generateAcceptKey(headers.get("sec-websocket-key"));
+        return new Handshake(
+            "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n" +
+            "Connection: Upgrade\r\nSec-WebSocket-Accept: " + acceptKey + "\r\n" +
+            (deflate != null ? "Sec-WebSocket-Extensions: " + deflate.responseHeader() + "\r\n" : "") +
+            (binary ? "Sec-WebSocket-Protocol: " + BinaryProtocol.SUBPROTOCOL + "\r\n" : "") +
+            "\r\n",
+            true,
+            deflate,
+            binary
+        );
     }
 
     private boolean isValidAuth(String authHeader) {
@@ -193,32 +589,286 @@ public class WebSocketServer {
 
     // ── Connection ──────────────────────────────────────────────────────
 
-    private static class Connection {
+    /**
+     * Transport-independent part of a WebSocket connection: frame decoding,
+     * dispatch, the bounded outbound queue and lifecycle. Subclasses supply the
+     * byte-level I/O and a writer that drains {@link #outbound}.
+     *
+     * Sends never block the caller: frames are encoded and queued, and the
+     * configured overflow policy decides what happens when a slow client lets
+     * the queue fill up. Responses and broadcasts share the queue, so per-connection
+     * ordering is preserved.
+     */
+    abstract static class Connection implements FrameDecoder.Handler {
+
+        final WebSocketServer server;
+        final MinecraftServer mcServer;
+        /** Client address holding the admission slot, released on close. */
+        private final InetAddress address;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        final LinkedBlockingDeque<byte[]> outbound;
+        private final FrameDecoder decoder;
+        private final MinaretConfig.OverflowPolicy overflow;
+        private final LongAdder droppedFrames = new LongAdder();
+        /** Events this client subscribed to. */
+        final Subscriptions.Member events;
+        /** Latest event sequence number when this client was registered; guarded by the replay lock. */
+        long joinedSeq;
+        /** Scheduler turn, rate limits, subscriptions and request counters for this client. */
+        final ClientSession session;
+        /** Negotiated compression, or null. Set once, before any frame is exchanged. */
+        volatile PerMessageDeflate deflate;
+        /** Client negotiated {@link BinaryProtocol}: events are pushed as binary frames. */
+        boolean binary = false;
+        volatile boolean active = true;
+        /** Set once a close frame is queued: no more data frames, close when drained. */
+        volatile boolean closeWhenDrained = false;
+
+        // ── Heartbeat ── pings carry their send time, so a pong yields the RTT
+        private volatile TimerWheel.Timeout heartbeat;
+        /** Pings sent since the last pong. */
+        private final AtomicInteger missedPongs = new AtomicInteger();
+        /** Round-trip time from the latest pong, or -1. */
+        volatile long rttNanos = -1;
+
+        Connection(WebSocketServer server, InetAddress address) {
+            this.server = server;
+            this.address = address;
+            this.mcServer = server.mcServer;
+            this.outbound = new LinkedBlockingDeque<>(MinaretConfig.OUTBOUND_QUEUE_FRAMES.get());
+            this.overflow = MinaretConfig.OUTBOUND_OVERFLOW.get();
+            this.decoder = new FrameDecoder(this, MinaretConfig.MAX_MESSAGE_BYTES.get());
+            // With auth on, every client has passed it as the configured user
+            this.events = server.subscriptions.member(this);
+            // Under nio the reading thread is a shared selector thread: handlers must not run on it
+            this.session = MessageDispatcher.newSession(
+                server.authEnabled ? server.authUsername : null,
+                events,
+                server.nio != null ? server::background : Runnable::run
+            );
+        }
+
+        abstract SocketAddress remoteAddress();
+
+        /** Nudge the writer after a frame was queued. */
+        abstract void wakeWriter();
+
+        /** Release the underlying socket/channel. Must be idempotent. */
+        abstract void closeTransport();
+
+        /** Apply what the upgrade negotiated. Called before the connection is published. */
+        void applyHandshake(Handshake hs) {
+            this.deflate = hs.deflate();
+            this.binary = hs.binary();
+            decoder.setDeflate(hs.deflate());
+        }
+
+        /** Final transformation a writer applies before bytes hit the socket. */
+        byte[] prepareForWire(byte[] frame) {
+            PerMessageDeflate d = deflate;
+            return d != null ? d.compressFrame(frame) : frame;
+        }
+
+        long getDroppedFrames() {
+            return droppedFrames.sum();
+        }
+
+        void send(String message) {
+            enqueue(WebSocketProtocol.encodeText(message), false);
+        }
+
+        void sendBinary(Object message) {
+            enqueue(WebSocketProtocol.encodeBinary(BinaryProtocol.encode(message)), false);
+        }
+
+        /**
+         * Wait until at least a quarter of the outbound queue is free, leaving room for
+         * live traffic. False if the connection closes or the thread is interrupted.
+         */
+        boolean awaitRoom() {
+            while (active && outbound.remainingCapacity() < (outbound.size() + outbound.remainingCapacity()) / 4) {
+                try {
+                    Thread.sleep(BACKPRESSURE_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return active;
+        }
+
+        /** Queue an event in this client's encoding, reusing {@code encoded[binary ? 1 : 0]} if built. */
+        void sendEvent(Map<String, Object> event, byte[][] encoded) {
+            if (binary) {
+                if (encoded[1] == null) encoded[1] = WebSocketProtocol.encodeBinary(BinaryProtocol.encode(event));
+                enqueue(encoded[1], false);
+            } else {
+                if (encoded[0] == null) encoded[0] = WebSocketProtocol.encodeText(SimpleJson.generate(event));
+                enqueue(encoded[0], false);
+            }
+        }
+
+        /** Queue a close frame; the writer closes the connection once it is flushed. */
+        void sendClose() {
+            closeWhenDrained = true;
+            enqueue(WebSocketProtocol.encodeFrame(WebSocketProtocol.OPCODE_CLOSE, new byte[0]), true);
+        }
+
+        /** {@link #sendClose} with a status code, e.g. 1002 protocol error. */
+        void sendClose(int status) {
+            closeWhenDrained = true;
+            byte[] code = {(byte) (status >> 8), (byte) status};
+            enqueue(WebSocketProtocol.encodeFrame(WebSocketProtocol.OPCODE_CLOSE, code), true);
+        }
+
+        void scheduleHeartbeat() {
+            heartbeat = server.timers.schedule(this::heartbeat, server.heartbeatIntervalMs);
+        }
+
+        /** Runs on the timer thread: reap if too many pings went unanswered, else ping again. */
+        private void heartbeat() {
+            if (!active) return;
+            if (missedPongs.getAndIncrement() >= server.heartbeatMaxMissed) {
+                LOGGER.info("No pong after {} pings — closing {}", server.heartbeatMaxMissed, remoteAddress());
+                close();
+                return;
+            }
+            byte[] stamp = new byte[Long.BYTES];
+            long now = System.nanoTime();
+            for (int i = 0; i < Long.BYTES; i++) stamp[i] = (byte) (now >>> (56 - 8 * i));
+            enqueue(WebSocketProtocol.encodeFrame(WebSocketProtocol.OPCODE_PING, stamp), true);
+            scheduleHeartbeat();
+        }
+
+        void sendPong(byte[] buf, int off, int len) {
+            enqueue(WebSocketProtocol.encodeMessage(WebSocketProtocol.OPCODE_PONG, false, buf, off, len), true);
+        }
+
+        /**
+         * Queue an encoded frame for the writer. Control frames always get in,
+         * evicting the oldest queued frame if necessary; data frames follow the
+         * overflow policy.
+         */
+        void enqueue(byte[] frame, boolean control) {
+            if (!active || (closeWhenDrained && !control)) return;
+            while (!outbound.offerLast(frame)) {
+                if (!control && overflow == MinaretConfig.OverflowPolicy.DISCONNECT) {
+                    LOGGER.warn("Outbound queue full ({} frames) — disconnecting slow client: {}",
+                        outbound.size(), remoteAddress());
+                    server.droppedFrames.increment();
+                    close();
+                    return;
+                }
+                if (!control && overflow == MinaretConfig.OverflowPolicy.DROP_NEWEST) {
+                    recordDrop();
+                    return;
+                }
+                if (outbound.pollFirst() != null) recordDrop();
+            }
+            wakeWriter();
+        }
+
+        private void recordDrop() {
+            droppedFrames.increment();
+            server.droppedFrames.increment();
+            if (droppedFrames.sum() == 1) {
+                LOGGER.warn("Outbound queue full — dropping frames ({}) for slow client: {}",
+                    overflow, remoteAddress());
+            }
+        }
+
+        /**
+         * Feed received bytes to the frame decoder. Returns false once the
+         * connection is closing and no further input should be read.
+         */
+        boolean consume(byte[] buf, int off, int len) throws IOException {
+            try {
+                return decoder.feed(buf, off, len);
+            } catch (ProtocolException e) {
+                LOGGER.debug("Protocol error — closing {}: {}", remoteAddress(), e.getMessage());
+                sendClose(e instanceof FrameDecoder.InvalidText
+                    ? WebSocketProtocol.CLOSE_INVALID_DATA
+                    : WebSocketProtocol.CLOSE_PROTOCOL_ERROR);
+                return false;
+            }
+        }
+
+        @Override
+        public void onText(byte[] utf8, int off, int len) {
+            MessageDispatcher.dispatch(session, new String(utf8, off, len, StandardCharsets.UTF_8), mcServer, this::send);
+        }
+
+        @Override
+        public void onBinary(byte[] buf, int off, int len) {
+            if (!binary) {
+                LOGGER.debug("Binary message without {} subprotocol ignored: {}",
+                    BinaryProtocol.SUBPROTOCOL, remoteAddress());
+                return;
+            }
+            MessageDispatcher.dispatchBinary(session, buf, off, len, mcServer, this::sendBinary);
+        }
+
+        @Override
+        public void onPing(byte[] buf, int off, int len) {
+            sendPong(buf, off, len);
+        }
+
+        @Override
+        public void onPong(byte[] buf, int off, int len) {
+            missedPongs.set(0);
+            if (len != Long.BYTES) return; // unsolicited pong: liveness only
+            long sent = 0;
+            for (int i = 0; i < Long.BYTES; i++) sent = (sent << 8) | (buf[off + i] & 0xFF);
+            long rtt = System.nanoTime() - sent;
+            // Ignore 8-byte pongs that cannot be an echo of one of our stamps
+            long window = TimeUnit.MILLISECONDS.toNanos(server.heartbeatIntervalMs) * (server.heartbeatMaxMissed + 1);
+            if (rtt >= 0 && rtt <= window) rttNanos = rtt;
+        }
+
+        @Override
+        public void onClose() {
+            sendClose();
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            active = false;
+            TimerWheel.Timeout hb = heartbeat;
+            if (hb != null) hb.cancel();
+            closeTransport();
+            outbound.clear();
+            server.connections.remove(this);
+            server.subscriptions.remove(events);
+            PerMessageDeflate d = deflate;
+            if (d != null) d.close();
+            server.release(address);
+        }
+    }
+
+    /**
+     * One blocking Socket serviced by two virtual threads: a reader that parses
+     * frames and a writer that drains the outbound queue.
+     */
+    private static class BlockingConnection extends Connection {
 
         private final Socket socket;
         private final InputStream input;
         private final OutputStream output;
-        private final MinecraftServer mcServer;
-        private final Set<Connection> connections;
-        private volatile boolean active = true;
+        private volatile Thread writer;
 
-        Connection(Socket socket, MinecraftServer mcServer, Set<Connection> connections)
-                throws IOException {
+        BlockingConnection(Socket socket, WebSocketServer server, InetAddress address) throws IOException {
+            super(server, address);
             this.socket = socket;
             this.input = socket.getInputStream();
-            this.output = socket.getOutputStream();
-            this.mcServer = mcServer;
-            this.connections = connections;
+            // Frames written back-to-back while draining go out in one write
+            this.output = new BufferedOutputStream(socket.getOutputStream(), WRITE_BATCH_BYTES);
         }
 
         void run() {
-            byte[] readBuf = new byte[BUFFER_SIZE];
-            // Single pre-allocated accumulation buffer. `limit` tracks how many
-            // bytes are valid. On consume, the remainder is shifted left in-place —
-            // no per-read allocation, no Arrays.copyOfRange churn.
-            byte[] buf = new byte[MAX_ACCUMULATOR];
-            int limit = 0;
+            writer = Thread.ofVirtual().name("minaret-ws-writer").start(this::writeLoop);
 
+            byte[] readBuf = new byte[BUFFER_SIZE];
+            boolean closing = false;
             try {
                 while (active && !socket.isClosed()) {
                     int bytesRead;
@@ -231,94 +881,62 @@ public class WebSocketServer {
                     }
                     if (bytesRead == -1) break;
 
-                    if (limit + bytesRead > MAX_ACCUMULATOR) {
-                        LOGGER.warn("Frame buffer overflow ({} bytes) — closing: {}",
-                            limit + bytesRead, socket.getRemoteSocketAddress());
-                        break;
-                    }
-
-                    System.arraycopy(readBuf, 0, buf, limit, bytesRead);
-                    limit += bytesRead;
-
-                    // Consume all complete frames from the front of buf
-                    int pos = 0;
-                    while (limit - pos >= 2) {
-                        WebSocketProtocol.Frame frame =
-                            WebSocketProtocol.parseFrame(buf, pos, limit - pos);
-                        if (frame == null) break; // incomplete — wait for more bytes
-
-                        if (frame.consumed() < 0) {
-                            // Unsupported 64-bit payload — close cleanly
-                            LOGGER.debug("Unsupported 64-bit frame — closing: {}",
-                                socket.getRemoteSocketAddress());
-                            sendClose();
-                            close();
-                            return;
-                        }
-
-                        pos += frame.consumed();
-
-                        switch (frame.opcode()) {
-                            case WebSocketProtocol.OPCODE_TEXT ->
-                                onMessage(new String(frame.payload(), StandardCharsets.UTF_8));
-                            case WebSocketProtocol.OPCODE_CLOSE -> {
-                                sendClose();
-                                close();
-                                return;
-                            }
-                            case WebSocketProtocol.OPCODE_PING -> sendPong(frame.payload());
-                            case WebSocketProtocol.OPCODE_PONG -> {}
-                        }
+                    // Close frame queued — the writer finishes the close
+                    if (!consume(readBuf, 0, bytesRead)) {
+                        closing = true;
+                        return;
                     }
-
-                    // Shift unconsumed bytes to the front
-                    int remaining = limit - pos;
-                    if (remaining > 0 && pos > 0) System.arraycopy(buf, pos, buf, 0, remaining);
-                    limit = remaining;
                 }
             } catch (IOException e) {
                 LOGGER.debug("WebSocket connection closed: {}", e.getMessage());
+            } catch (RuntimeException e) {
+                LOGGER.warn("WebSocket connection failed: {}", socket.getRemoteSocketAddress(), e);
             } finally {
-                close();
+                // Whatever ends the reader releases the socket, writer, subscriptions and admission slot
+                if (!closing) close();
             }
         }
 
-        private void onMessage(String message) {
-            MessageDispatcher.dispatch(message, mcServer, response -> {
-                try {
-                    send(response);
-                } catch (IOException e) {
-                    LOGGER.error("Failed to send response", e);
+        private void writeLoop() {
+            try {
+                while (active) {
+                    output.write(prepareForWire(outbound.takeFirst()));
+                    // Flush only once the queue is momentarily empty, so a burst
+                    // of small frames is coalesced into a few large writes
+                    if (outbound.isEmpty()) {
+                        output.flush();
+                        if (closeWhenDrained) break;
+                    }
                 }
-            });
-        }
-
-        private void send(String message) throws IOException {
-            synchronized (output) {
-                WebSocketProtocol.sendText(output, message);
+            } catch (InterruptedException e) {
+                // close() interrupts a writer parked on an empty queue
+            } catch (IOException e) {
+                LOGGER.debug("WebSocket write failed: {}", e.getMessage());
+            } catch (RuntimeException e) {
+                LOGGER.warn("WebSocket write failed: {}", socket.getRemoteSocketAddress(), e);
             }
+            close();
         }
 
-        private void sendClose() throws IOException {
-            synchronized (output) {
-                WebSocketProtocol.sendClose(output);
-            }
+        @Override
+        SocketAddress remoteAddress() {
+            return socket.getRemoteSocketAddress();
         }
 
-        private void sendPong(byte[] payload) throws IOException {
-            synchronized (output) {
-                WebSocketProtocol.sendPong(output, payload);
-            }
+        @Override
+        void wakeWriter() {
+            // takeFirst() in the writer wakes on its own
         }
 
-        void close() {
-            active = false;
+        @Override
+        void closeTransport() {
             try {
                 if (!socket.isClosed()) socket.close();
             } catch (IOException e) {
                 LOGGER.debug("Error closing WebSocket connection", e);
             }
-            connections.remove(this);
+            Thread w = writer;
+            if (w != null && w != Thread.currentThread()) w.interrupt();
         }
     }
 }
@@ -0,0 +1,51 @@
+package com.minaret;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BinaryProtocolTest {
+
+    private static Object decode(byte[] b) {
+        return BinaryProtocol.decode(b, 0, b.length);
+    }
+
+    /** {@code tag} followed by a 10-byte varint that decodes negative. */
+    private static byte[] negativeCount(int tag) {
+        byte[] b = new byte[11];
+        b[0] = (byte) tag;
+        for (int i = 1; i < 10; i++) b[i] = (byte) 0xFF;
+        b[10] = 0x01;
+        return b;
+    }
+
+    @Test
+    void roundTripsValueTree() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("type", "cast");
+        m.put("slot", 3L);
+        m.put("amount", -2.5);
+        m.put("ok", true);
+        m.put("none", null);
+        m.put("list", List.of("a", 1L));
+        Assertions.assertEquals(m, decode(BinaryProtocol.encode(m)));
+    }
+
+    @Test
+    void rejectsNegativeStringLength() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(negativeCount(5)));
+    }
+
+    @Test
+    void rejectsNegativeListAndMapCounts() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(negativeCount(6)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(negativeCount(7)));
+    }
+
+    @Test
+    void rejectsLengthPastEnd() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(new byte[] {5, 10, 'a'}));
+    }
+}
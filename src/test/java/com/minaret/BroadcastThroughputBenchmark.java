@@ -0,0 +1,82 @@
+package com.minaret;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Broadcast throughput to one local client: how many small event frames per second
+ * reach a raw-socket WebSocket client, per transport. Measures write coalescing
+ * (batched and gathering writes) end to end.
+ *
+ * Run: {@code ./gradlew :versions:1.21.1:benchmark -Pbench=BroadcastThroughputBenchmark [-Pargs="nio"]}
+ */
+final class BroadcastThroughputBenchmark {
+
+    private static final int PORT = 18766;
+    private static final int FRAMES = 200_000;
+    private static final int ROUNDS = 3;
+    private static final String EVENT = "{\"event\":\"player_kill\",\"player\":\"Steve\",\"mob\":\"zombie\"}";
+
+    public static void main(String[] args) throws Exception {
+        TestConfig.loadDefaults();
+        String[] transports = args.length > 0 ? args : new String[] {MinaretConfig.TRANSPORT_NIO, MinaretConfig.TRANSPORT_BLOCKING};
+        for (String transport : transports) run(transport);
+        System.exit(0);
+    }
+
+    private static void run(String transport) throws Exception {
+        MinaretConfig.TRANSPORT.set(transport);
+        WebSocketServer ws = new WebSocketServer("127.0.0.1", PORT, null, "", "");
+        ws.start();
+        try (Socket socket = new Socket("127.0.0.1", PORT)) {
+            socket.getOutputStream().write((
+                "GET / HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n"
+            ).getBytes(StandardCharsets.US_ASCII));
+            InputStream in = socket.getInputStream();
+            byte[] buf = new byte[65536];
+            // Skip the 101 response
+            for (String seen = ""; !seen.contains("\r\n\r\n"); ) {
+                seen += new String(buf, 0, in.read(buf), StandardCharsets.ISO_8859_1);
+            }
+
+            int frameLen = 2 + EVENT.length();
+            long expected = (long) FRAMES * frameLen;
+            socket.setSoTimeout(3000);
+            for (int round = 0; round < ROUNDS; round++) {
+                long dropsBefore = ws.getDroppedFrames();
+                long start = System.nanoTime();
+                Thread producer = new Thread(() -> {
+                    for (int i = 0; i < FRAMES; i++) {
+                        ws.broadcast(EVENT);
+                        if ((i & 255) == 0) Thread.yield();
+                    }
+                });
+                producer.start();
+                long received = 0;
+                int reads = 0;
+                long last = start;
+                try {
+                    while (received < expected) {
+                        received += in.read(buf);
+                        reads++;
+                        last = System.nanoTime();
+                    }
+                } catch (SocketTimeoutException e) {
+                    // frames dropped by the overflow policy never arrive
+                }
+                producer.join();
+                double ms = (last - start) / 1e6;
+                System.out.printf(
+                    "%-8s round %d: %6.0f ms  %,10.0f frames/s  %,7d client reads  %,d dropped%n",
+                    transport, round, ms, received / (double) frameLen / ms * 1000, reads,
+                    ws.getDroppedFrames() - dropsBefore
+                );
+            }
+        } finally {
+            ws.stop();
+        }
+    }
+}
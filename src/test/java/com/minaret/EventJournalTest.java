@@ -0,0 +1,103 @@
+package com.minaret;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class EventJournalTest {
+
+    private static final int SEGMENT = 16 * 1024;
+
+    private static Map<String, Object> event(long i) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("event", "player_kill");
+        m.put("player", "Steve");
+        m.put("n", i);
+        return m;
+    }
+
+    private static List<Long> readAll(EventJournal journal) throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        journal.read(1, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, e -> {
+            Assertions.assertEquals(e.seq(), e.event().get("n"));
+            return seqs.add(e.seq());
+        });
+        return seqs;
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> seqs = new ArrayList<>();
+        for (long i = from; i <= to; i++) seqs.add(i);
+        return seqs;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+
+    @Test
+    void readsBackAcrossRotations() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        try {
+            EventJournal journal = new EventJournal(dir, SEGMENT, Long.MAX_VALUE, 0);
+            for (long i = 1; i <= 2000; i++) journal.append(i, i, event(i));
+            Assertions.assertEquals(range(1, 2000), readAll(journal));
+            journal.close();
+            try (Stream<Path> files = Files.list(dir)) {
+                // About 40 bytes a record, so several segments; no spare is left behind
+                List<Path> segments = files.toList();
+                Assertions.assertTrue(segments.size() > 3);
+                Assertions.assertTrue(segments.stream().allMatch(p -> p.toString().endsWith(".journal")));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void resumesNumberingAfterReopen() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        try {
+            EventJournal journal = new EventJournal(dir, SEGMENT, Long.MAX_VALUE, 0);
+            for (long i = 1; i <= 1000; i++) journal.append(i, i, event(i));
+            journal.close();
+            journal = new EventJournal(dir, SEGMENT, Long.MAX_VALUE, 0);
+            Assertions.assertEquals(1000, journal.latest());
+            for (long i = 1001; i <= 1500; i++) journal.append(i, i, event(i));
+            Assertions.assertEquals(range(1, 1500), readAll(journal));
+            journal.close();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void deletesOldestSegmentsBeyondRetention() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        try {
+            EventJournal journal = new EventJournal(dir, SEGMENT, 3L * SEGMENT, 0);
+            for (long i = 1; i <= 5000; i++) journal.append(i, i, event(i));
+            journal.close();
+            try (Stream<Path> files = Files.list(dir)) {
+                Assertions.assertTrue(files.count() <= 4);
+            }
+            journal = new EventJournal(dir, SEGMENT, 3L * SEGMENT, 0);
+            List<Long> seqs = readAll(journal);
+            Assertions.assertEquals(5000, seqs.get(seqs.size() - 1).longValue());
+            Assertions.assertEquals(range(seqs.get(0), 5000), seqs);
+            journal.close();
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.minaret;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Server-thread cost of one game event, before and after {@link EventPipeline}.
+ *
+ * "inline" does what the callbacks used to do on the tick: build the event map,
+ * generate JSON, encode the frame and enqueue it to every client. "pipeline" only
+ * publishes a record; the same work runs on the pipeline's thread. Both simulate
+ * 8 JSON clients and 1000 {@code player_kill} events per tick, and time only the
+ * producer side. CPU time is the figure to compare: on machines with few cores the
+ * pipeline's thread preempts the producer, which inflates its wall time.
+ *
+ * Run: {@code ./gradlew :versions:1.21.1:benchmark -Pbench=EventPublishBenchmark}
+ */
+final class EventPublishBenchmark {
+
+    private static final int CLIENTS = 8;
+    private static final int EVENTS_PER_TICK = 1000;
+    private static final int WARMUP_TICKS = 500;
+    private static final int TICKS = 500;
+    private static final int KILL = 3;
+
+    private static final List<Queue<byte[]>> queues = new ArrayList<>();
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < CLIENTS; i++) queues.add(new ConcurrentLinkedQueue<>());
+        UUID player = UUID.randomUUID();
+
+        for (int round = 0; round < 3; round++) {
+            runTicks(WARMUP_TICKS, () -> deliver(player, "minecraft:zombie"));
+            long[] ns = runTicks(TICKS, () -> deliver(player, "minecraft:zombie"));
+            report("inline", round, ns);
+        }
+
+        EventPipeline pipeline = new EventPipeline(
+            EVENTS_PER_TICK * 4,
+            slot -> deliver(slot.player(), (String) slot.ref)
+        );
+        pipeline.start();
+        try {
+            for (int round = 0; round < 3; round++) {
+                runTicks(pipeline, WARMUP_TICKS, player);
+                long[] ns = runTicks(pipeline, TICKS, player);
+                report("pipeline", round, ns);
+            }
+            System.out.printf("pipeline dropped %d events%n", pipeline.dropped());
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    /**
+     * Time {@code ticks} ticks of inline delivery, clearing client queues between ticks.
+     * Returns {wall, cpu} nanoseconds.
+     */
+    private static long[] runTicks(int ticks, Runnable event) {
+        long[] total = new long[2];
+        for (int t = 0; t < ticks; t++) {
+            long wall = System.nanoTime();
+            long cpu = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < EVENTS_PER_TICK; i++) event.run();
+            total[1] += threads.getCurrentThreadCpuTime() - cpu;
+            total[0] += System.nanoTime() - wall;
+            drainQueues();
+        }
+        return total;
+    }
+
+    /** Time {@code ticks} ticks of publishing, waiting for the consumer between ticks. */
+    private static long[] runTicks(EventPipeline pipeline, int ticks, UUID player) {
+        long[] total = new long[2];
+        for (int t = 0; t < ticks; t++) {
+            long wall = System.nanoTime();
+            long cpu = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < EVENTS_PER_TICK; i++) pipeline.publish(KILL, player, "minecraft:zombie", 0, 0);
+            pipeline.signal();
+            total[1] += threads.getCurrentThreadCpuTime() - cpu;
+            total[0] += System.nanoTime() - wall;
+            while (pipeline.backlog() > 0) Thread.onSpinWait();
+            drainQueues();
+        }
+        return total;
+    }
+
+    private static void deliver(UUID player, String mob) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", "player_kill");
+        event.put("player", "Steve");
+        event.put("uuid", player.toString());
+        event.put("mob", mob);
+        byte[] frame = WebSocketProtocol.encodeText(SimpleJson.generate(event));
+        for (Queue<byte[]> queue : queues) queue.offer(frame);
+    }
+
+    private static void drainQueues() {
+        for (Queue<byte[]> queue : queues) queue.clear();
+    }
+
+    private static void report(String mode, int round, long[] ns) {
+        double events = (double) TICKS * EVENTS_PER_TICK;
+        System.out.printf(
+            "%-8s round %d: %8.1f ns/event cpu  %8.1f ns/event wall%n",
+            mode, round, ns[1] / events, ns[0] / events
+        );
+    }
+}
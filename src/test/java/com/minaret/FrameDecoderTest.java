@@ -0,0 +1,281 @@
+package com.minaret;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+class FrameDecoderTest {
+
+    private static final int MAX_MESSAGE = 1 << 20;
+    private static final byte[] MASK = {0x12, 0x34, 0x56, 0x78};
+
+    /** Records what the decoder hands over. */
+    private static final class Recorder implements FrameDecoder.Handler {
+        final List<String> texts = new ArrayList<>();
+        int frames;
+        boolean keep = true;
+
+        @Override
+        public void onText(byte[] utf8, int off, int len) {
+            frames++;
+            if (keep) texts.add(new String(utf8, off, len, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onBinary(byte[] buf, int off, int len) {
+            frames++;
+        }
+
+        @Override
+        public void onPing(byte[] buf, int off, int len) {}
+
+        @Override
+        public void onPong(byte[] buf, int off, int len) {}
+
+        @Override
+        public void onClose() {}
+    }
+
+    /** A masked client frame with the given first byte and payload. */
+    private static byte[] masked(int b0, byte[] payload) {
+        int n = payload.length;
+        int lenBytes = n < 126 ? 0 : n < 65536 ? 2 : 8;
+        byte[] f = new byte[2 + lenBytes + 4 + n];
+        f[0] = (byte) b0;
+        int p = 2;
+        if (lenBytes == 0) {
+            f[1] = (byte) (0x80 | n);
+        } else if (lenBytes == 2) {
+            f[1] = (byte) (0x80 | 126);
+            f[p++] = (byte) (n >> 8);
+            f[p++] = (byte) n;
+        } else {
+            f[1] = (byte) (0x80 | 127);
+            for (int i = 7; i >= 0; i--) f[p++] = (byte) ((long) n >> (i * 8));
+        }
+        System.arraycopy(MASK, 0, f, p, 4);
+        p += 4;
+        for (int i = 0; i < n; i++) f[p + i] = (byte) (payload[i] ^ MASK[i & 3]);
+        return f;
+    }
+
+    private static byte[] text(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** A masked text frame header declaring a 64-bit length of {@code len}, then 16 payload bytes. */
+    private static byte[] withLength(long len) {
+        byte[] f = new byte[2 + 8 + 4 + 16];
+        f[0] = (byte) 0x81;
+        f[1] = (byte) (0x80 | 127);
+        for (int i = 0; i < 8; i++) f[2 + i] = (byte) (len >>> ((7 - i) * 8));
+        return f;
+    }
+
+    @Test
+    void decodesWholeAndSplitMaskedFrames() throws IOException {
+        Recorder r = new Recorder();
+        FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+        byte[] frame = masked(0x81, text("hello, world"));
+        d.feed(frame.clone(), 0, frame.length);
+        byte[] split = frame.clone();
+        for (int i = 0; i < split.length; i++) d.feed(split, i, 1);
+        Assertions.assertEquals(List.of("hello, world", "hello, world"), r.texts);
+    }
+
+    @Test
+    void assemblesFragmentsAroundControlFrames() throws IOException {
+        Recorder r = new Recorder();
+        FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+        byte[] first = masked(0x01, text("abc"));
+        byte[] ping = masked(0x89, new byte[0]);
+        byte[] last = masked(0x80, text("def"));
+        d.feed(first, 0, first.length);
+        d.feed(ping, 0, ping.length);
+        d.feed(last, 0, last.length);
+        Assertions.assertEquals(List.of("abcdef"), r.texts);
+    }
+
+    @Test
+    void decodesSixtyFourBitLengths() throws IOException {
+        Recorder r = new Recorder();
+        FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+        String big = "x".repeat(70_000);
+        byte[] frame = masked(0x81, text(big));
+        d.feed(frame, 0, frame.length);
+        Assertions.assertEquals(List.of(big), r.texts);
+    }
+
+    @Test
+    void rejectsNegativeLengthInOneChunk() {
+        for (long len : new long[] {0x80000000_00000010L, 0xFFFFFFFF_FFFFFFF0L}) {
+            Recorder r = new Recorder();
+            FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+            byte[] frame = withLength(len);
+            Assertions.assertThrows(ProtocolException.class, () -> d.feed(frame, 0, frame.length));
+            Assertions.assertEquals(0, r.frames);
+        }
+    }
+
+    @Test
+    void rejectsNegativeLengthSplitAcrossChunks() {
+        Recorder r = new Recorder();
+        FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+        byte[] frame = withLength(0x80000000_00000010L);
+        Assertions.assertThrows(ProtocolException.class, () -> {
+            for (int i = 0; i < frame.length; i++) d.feed(frame, i, 1);
+        });
+        Assertions.assertEquals(0, r.frames);
+    }
+
+    @Test
+    void rejectsOversizedMessage() {
+        FrameDecoder d = new FrameDecoder(new Recorder(), 16);
+        byte[] frame = masked(0x81, text("x".repeat(17)));
+        Assertions.assertThrows(ProtocolException.class, () -> d.feed(frame, 0, frame.length));
+    }
+
+    // ── UTF-8 ──
+
+    private static boolean validUtf8(byte[] b) {
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(b));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    @Test
+    void acceptsMultiByteTextSplitMidSequence() throws IOException {
+        Recorder r = new Recorder();
+        FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+        String s = "h\u00e9llo \u20ac \ud834\udd1e";
+        byte[] utf8 = text(s);
+        // Fragment boundary inside the 4-byte sequence, then byte-at-a-time reads
+        byte[] first = masked(0x01, Arrays.copyOfRange(utf8, 0, utf8.length - 2));
+        byte[] last = masked(0x80, Arrays.copyOfRange(utf8, utf8.length - 2, utf8.length));
+        for (int i = 0; i < first.length; i++) d.feed(first, i, 1);
+        for (int i = 0; i < last.length; i++) d.feed(last, i, 1);
+        byte[] whole = masked(0x81, utf8);
+        d.feed(whole, 0, whole.length);
+        Assertions.assertEquals(List.of(s, s), r.texts);
+    }
+
+    @Test
+    void rejectsMalformedText() {
+        byte[][] bad = {
+            {(byte) 0xC0, (byte) 0x80},                           // overlong
+            {(byte) 0xED, (byte) 0xA0, (byte) 0x80},              // surrogate
+            {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80}, // past U+10FFFF
+            {(byte) 0xF5, (byte) 0x80, (byte) 0x80, (byte) 0x80},
+            {'a', (byte) 0x80},                                   // stray continuation
+            {'a', (byte) 0xE2, (byte) 0x82},                      // truncated at the end
+        };
+        for (byte[] payload : bad) {
+            Recorder r = new Recorder();
+            FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+            byte[] frame = masked(0x81, payload);
+            Assertions.assertThrows(FrameDecoder.InvalidText.class, () -> d.feed(frame, 0, frame.length));
+            Assertions.assertEquals(0, r.frames);
+        }
+    }
+
+    @Test
+    void rejectsSequenceLeftOpenAtFin() {
+        Recorder r = new Recorder();
+        FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+        byte[] first = masked(0x01, new byte[] {'a', (byte) 0xE2, (byte) 0x82});
+        byte[] last = masked(0x80, new byte[0]);
+        Assertions.assertThrows(FrameDecoder.InvalidText.class, () -> {
+            d.feed(first, 0, first.length);
+            d.feed(last, 0, last.length);
+        });
+        Assertions.assertEquals(0, r.frames);
+    }
+
+    @Test
+    void agreesWithCharsetDecoder() {
+        Random random = new Random(1);
+        byte[] alphabet = {
+            'a', (byte) 0x7F, (byte) 0x80, (byte) 0x8F, (byte) 0x90, (byte) 0x9F, (byte) 0xA0, (byte) 0xBF,
+            (byte) 0xC0, (byte) 0xC2, (byte) 0xDF, (byte) 0xE0, (byte) 0xED, (byte) 0xEF, (byte) 0xF0,
+            (byte) 0xF4, (byte) 0xF5, (byte) 0xFF,
+        };
+        for (int n = 0; n < 50_000; n++) {
+            byte[] payload = new byte[1 + random.nextInt(12)];
+            for (int i = 0; i < payload.length; i++) payload[i] = alphabet[random.nextInt(alphabet.length)];
+            Recorder r = new Recorder();
+            FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+            byte[] frame = masked(0x81, payload);
+            boolean accepted;
+            try {
+                d.feed(frame, 0, frame.length);
+                accepted = true;
+            } catch (IOException e) {
+                accepted = false;
+            }
+            Assertions.assertEquals(validUtf8(payload), accepted, Arrays.toString(payload));
+        }
+    }
+
+    // ── Allocation ──
+
+    /** Bytes allocated by this thread per frame decoded, over {@code frames} frames fed in {@code chunk}-byte reads. */
+    private static double bytesPerFrame(byte[] frame, int chunk, int frames) throws IOException {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Recorder r = new Recorder();
+        r.keep = false;
+        FrameDecoder d = new FrameDecoder(r, MAX_MESSAGE);
+        byte[] work = new byte[frame.length];
+        // Warm up so the measured loop runs compiled, then measure
+        for (int pass = 0; pass < 2; pass++) {
+            long before = bean.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < frames; i++) {
+                // Unmasking is in place: start each frame from the masked bytes
+                System.arraycopy(frame, 0, work, 0, frame.length);
+                for (int off = 0; off < work.length; off += chunk) d.feed(work, off, Math.min(chunk, work.length - off));
+            }
+            long allocated = bean.getCurrentThreadAllocatedBytes() - before;
+            if (pass == 1) return (double) allocated / frames;
+        }
+        throw new AssertionError();
+    }
+
+    @Test
+    void decodesWholeFramesWithoutAllocating() throws IOException {
+        Assumptions.assumeTrue(
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()
+        );
+        byte[] frame = masked(0x81, text("{\"type\":\"use\",\"player\":\"Steve\",\"slot\":3}"));
+        double perFrame = bytesPerFrame(frame, frame.length, 200_000);
+        Assertions.assertTrue(perFrame < 1.0, "allocated " + perFrame + " bytes per frame");
+    }
+
+    @Test
+    void decodesSplitFramesWithoutAllocating() throws IOException {
+        Assumptions.assumeTrue(
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()
+        );
+        // Split reads take the streaming path and assemble into the retained buffer
+        byte[] frame = masked(0x81, text("x".repeat(2000)));
+        double perFrame = bytesPerFrame(frame, 512, 50_000);
+        Assertions.assertTrue(perFrame < 1.0, "allocated " + perFrame + " bytes per frame");
+    }
+}
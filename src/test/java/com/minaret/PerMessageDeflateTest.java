@@ -0,0 +1,47 @@
+package com.minaret;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PerMessageDeflateTest {
+
+    private static final int MAX = 10_000;
+
+    /** What a client sends: raw deflate, SYNC_FLUSH, trailing 00 00 FF FF stripped. */
+    private static byte[] compress(byte[] message) {
+        Deflater d = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        d.setInput(message);
+        byte[] out = new byte[message.length * 2 + 64];
+        int len = d.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+        d.end();
+        return Arrays.copyOf(out, len - 4);
+    }
+
+    private static byte[] text(int length, long seed) {
+        byte[] b = new byte[length];
+        Random rnd = new Random(seed);
+        for (int i = 0; i < length; i++) b[i] = (byte) ('a' + rnd.nextInt(8));
+        return b;
+    }
+
+    private static PerMessageDeflate deflate() {
+        return PerMessageDeflate.negotiate(PerMessageDeflate.EXTENSION, true, 0);
+    }
+
+    @Test
+    void acceptsMessageOfExactlyMaxSize() throws IOException {
+        byte[] message = text(MAX, 1);
+        byte[] payload = compress(message);
+        Assertions.assertTrue(Arrays.equals(message, deflate().inflate(payload, payload.length, MAX)));
+    }
+
+    @Test
+    void rejectsMessageOneByteOverMaxSize() {
+        byte[] payload = compress(text(MAX + 1, 2));
+        Assertions.assertThrows(IOException.class, () -> deflate().inflate(payload, payload.length, MAX));
+    }
+}
@@ -0,0 +1,32 @@
+package com.minaret;
+
+import com.electronwill.nightconfig.core.CommentedConfig;
+import net.neoforged.fml.config.IConfigSpec;
+
+/**
+ * Loads {@link MinaretConfig} with its defaults, as the game does from a fresh
+ * config file, so tests and benchmarks can use classes that read it. Values can
+ * then be changed with {@code set}.
+ */
+final class TestConfig {
+
+    private static boolean loaded;
+
+    private TestConfig() {}
+
+    static synchronized void loadDefaults() {
+        if (loaded) return;
+        CommentedConfig config = CommentedConfig.inMemory();
+        MinaretConfig.CONFIG_SPEC.correct(config);
+        MinaretConfig.CONFIG_SPEC.acceptConfig(new IConfigSpec.ILoadedConfig() {
+            @Override
+            public CommentedConfig config() {
+                return config;
+            }
+
+            @Override
+            public void save() {}
+        });
+        loaded = true;
+    }
+}